@@ -0,0 +1,61 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.apereo.openlrs.utils.AuthorizationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pulling the consumer key out of the Authorization header, which every
+ * authenticated request does at least once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizationHeaderBenchmark {
+
+  private static final String OAUTH = "OAuth realm=\"\", oauth_consumer_key=\"lms.example.edu\", "
+      + "oauth_nonce=\"8f14e45fceea167a5a36dedd4bea2543\", oauth_signature_method=\"HMAC-SHA1\", "
+      + "oauth_timestamp=\"1466435259\", oauth_version=\"1.0\", oauth_signature=\"wOJIO9A2W5mFwDgiDvZbTSMK%2FPY%3D\"";
+  private static final String BASIC = "Basic " + Base64.getEncoder().encodeToString(
+      "lms.example.edu:5a1d2b0c-7f3e-4e8a-9c61-0d2f4b7e8a93".getBytes(StandardCharsets.UTF_8));
+
+  @Benchmark
+  public String oauthKey() {
+    return AuthorizationUtils.getKeyFromHeader(OAUTH);
+  }
+
+  @Benchmark
+  public String basicKey() {
+    return AuthorizationUtils.getKeyFromHeader(BASIC);
+  }
+
+}
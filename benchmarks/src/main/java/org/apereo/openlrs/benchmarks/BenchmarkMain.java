@@ -0,0 +1,40 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with its results also written to jmh-result.json, so a run can
+ * be compared against a previous one by a script. Passing -rf or -rff
+ * replaces that default.
+ */
+public final class BenchmarkMain {
+
+  private BenchmarkMain() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> options = new ArrayList<String>(Arrays.asList(args));
+    if (!options.contains("-rf") && !options.contains("-rff")) {
+      options.addAll(Arrays.asList("-rf", "json", "-rff", "jmh-result.json"));
+    }
+    org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+  }
+
+}
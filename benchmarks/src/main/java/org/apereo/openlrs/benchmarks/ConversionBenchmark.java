@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apereo.openlrs.controllers.xapi.XApiToCaliperConversionService;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.xapi.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * xAPI to Caliper on the POST path and back again on the GET path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+  private static final String TENANT = "1";
+
+  private XApiToCaliperConversionService service;
+  private Statement statement;
+  private Event event;
+
+  @Setup
+  public void setup() {
+    service = new XApiToCaliperConversionService();
+    statement = Fixtures.statement(0);
+    event = service.fromXapi(statement, TENANT);
+  }
+
+  @Benchmark
+  public Event fromXapi() {
+    return service.fromXapi(statement, TENANT);
+  }
+
+  @Benchmark
+  public Statement toXapi() throws Exception {
+    return service.toXapi(event, TENANT);
+  }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.utils.JsonUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+
+/**
+ * The Kinesis record payload: a fresh ObjectMapper per event followed by
+ * String.getBytes (the old Event.toJSON path) against the shared writer
+ * encoding straight to bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventSerializationBenchmark {
+
+  private Event event;
+
+  @Setup
+  public void setup() {
+    event = Fixtures.event(0);
+  }
+
+  @Benchmark
+  public ByteBuffer mapperPerEvent() throws Exception {
+    ObjectMapper om = new ObjectMapper();
+    om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    om.enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+    om.registerModule(new JodaModule());
+    return ByteBuffer.wrap(om.writer().writeValueAsString(event).getBytes());
+  }
+
+  @Benchmark
+  public ByteBuffer sharedWriter() throws Exception {
+    return ByteBuffer.wrap(JsonUtils.toJodaJsonBytes(event));
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.util.Collections;
+
+import org.apereo.openlrs.model.event.Actor;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.Group;
+import org.apereo.openlrs.model.event.Object;
+import org.apereo.openlrs.model.xapi.Statement;
+import org.apereo.openlrs.model.xapi.XApiActor;
+import org.apereo.openlrs.model.xapi.XApiContext;
+import org.apereo.openlrs.model.xapi.XApiContextActivities;
+import org.apereo.openlrs.model.xapi.XApiObject;
+import org.apereo.openlrs.model.xapi.XApiObjectDefinition;
+import org.apereo.openlrs.model.xapi.XApiVerb;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Representative payloads shared by the benchmarks.
+ */
+final class Fixtures {
+
+  private Fixtures() {
+  }
+
+  /** a typical LMS navigation event, varied by n across students and courses */
+  static Event event(int n) {
+    String student = "https://lms.example.edu/users/" + (n % 5000);
+    String course = "https://lms.example.edu/courses/" + (n % 200);
+    Actor actor = new Actor(student, "http://purl.imsglobal.org/ctx/caliper/v1/Context",
+        "http://purl.imsglobal.org/caliper/v1/lis/Person", "Student " + (n % 5000), null, null);
+    Object object = new Object(course + "/pages/" + (n % 50), "http://purl.imsglobal.org/ctx/caliper/v1/Context",
+        "http://purl.imsglobal.org/caliper/v1/WebPage", "Syllabus", null, null);
+    Group group = new Group(course, "http://purl.imsglobal.org/ctx/caliper/v1/Context",
+        "http://purl.imsglobal.org/caliper/v1/lis/CourseSection", "Course " + (n % 200), null, null, null);
+    DateTime now = new DateTime(DateTimeZone.UTC);
+    return new Event("urn:uuid:" + n, "http://purl.imsglobal.org/ctx/caliper/v1/Context",
+        "http://purl.imsglobal.org/caliper/v1/NavigationEvent", now, now, actor,
+        "http://purl.imsglobal.org/vocab/caliper/v1/action#NavigatedTo", object, null, group, null);
+  }
+
+  /** the same navigation as an xAPI statement, with the course as its grouping */
+  static Statement statement(int n) {
+    XApiActor actor = new XApiActor();
+    actor.setMbox("mailto:student" + (n % 5000) + "@example.edu");
+    actor.setName("Student " + (n % 5000));
+
+    XApiVerb verb = new XApiVerb();
+    verb.setId("http://adlnet.gov/expapi/verbs/experienced");
+    verb.setDisplay(Collections.singletonMap("en-US", "experienced"));
+
+    XApiObjectDefinition definition = new XApiObjectDefinition();
+    definition.setType("http://adlnet.gov/expapi/activities/link");
+    definition.setName(Collections.singletonMap("en-US", "Syllabus"));
+    XApiObject object = new XApiObject();
+    object.setId("https://lms.example.edu/courses/" + (n % 200) + "/pages/" + (n % 50));
+    object.setDefinition(definition);
+
+    XApiObjectDefinition courseDefinition = new XApiObjectDefinition();
+    courseDefinition.setType("http://adlnet.gov/expapi/activities/course");
+    courseDefinition.setName(Collections.singletonMap("en-US", "Course " + (n % 200)));
+    XApiObject course = new XApiObject();
+    course.setId("https://lms.example.edu/courses/" + (n % 200));
+    course.setDefinition(courseDefinition);
+    XApiContextActivities activities = new XApiContextActivities();
+    activities.setGrouping(Collections.singletonList(course));
+    XApiContext context = new XApiContext();
+    context.setPlatform("Example LMS");
+    context.setContextActivities(activities);
+
+    Statement statement = new Statement();
+    statement.setId("6690e6c9-3ef0-4ed3-8b37-7f3964730bee");
+    statement.setActor(actor);
+    statement.setVerb(verb);
+    statement.setObject(object);
+    statement.setContext(context);
+    statement.setTimestamp("2016-06-20T15:47:39.123Z");
+    return statement;
+  }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQuery;
+import org.apereo.openlrs.storage.inmemory.InMemoryReaderWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Save and the three read shapes (by id, cursor page, actor query) against
+ * a tenant already holding the given number of events. The store is
+ * refilled before every iteration so saves from the previous one do not
+ * pile up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class InMemoryReaderWriterBenchmark {
+
+  private static final String TENANT = "1";
+  private static final int PAGE = 100;
+
+  @Param({"10000", "1000000"})
+  private int events;
+
+  private InMemoryReaderWriter store;
+  private Event[] fixtures;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    store = new InMemoryReaderWriter();
+    fixtures = new Event[events];
+    for (int i = 0; i < events; i++) {
+      fixtures[i] = Fixtures.event(i);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setupIteration() throws Exception {
+    clear();
+    for (int from = 0; from < events; from += 1000) {
+      store.saveAll(Arrays.asList(fixtures).subList(from, Math.min(from + 1000, events)), TENANT);
+    }
+  }
+
+  @Benchmark
+  public Event save() {
+    // reuses the fixtures so only the store's own structures grow
+    return store.save(fixtures[next++ % events], TENANT);
+  }
+
+  @Benchmark
+  public Event findById() {
+    return store.findByTenantIdAndEventId(TENANT, fixtures[ThreadLocalRandom.current().nextInt(events)].getId());
+  }
+
+  @Benchmark
+  public CursorPage findPage() {
+    return store.findByTenantId(TENANT, String.valueOf(ThreadLocalRandom.current().nextInt(events - PAGE)), PAGE);
+  }
+
+  @Benchmark
+  public List<Event> findByActor() {
+    String actor = fixtures[ThreadLocalRandom.current().nextInt(events)].getActor().getId();
+    return store.findByQuery(TENANT, EventQuery.builder().actor(actor).limit(PAGE).build());
+  }
+
+  /** the store is static, so the only way to start empty is to clear it */
+  private static void clear() throws Exception {
+    Field field = InMemoryReaderWriter.class.getDeclaredField("store");
+    field.setAccessible(true);
+    ((Map<?, ?>) field.get(null)).clear();
+  }
+
+}
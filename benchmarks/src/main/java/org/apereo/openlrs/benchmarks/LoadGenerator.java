@@ -0,0 +1,429 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apereo.openlrs.Application;
+import org.apereo.openlrs.metrics.Histogram;
+import org.apereo.openlrs.model.event.Actor;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.Group;
+import org.apereo.openlrs.model.event.Object;
+import org.apereo.openlrs.model.xapi.Statement;
+import org.apereo.openlrs.model.xapi.XApiActor;
+import org.apereo.openlrs.model.xapi.XApiContext;
+import org.apereo.openlrs.model.xapi.XApiContextActivities;
+import org.apereo.openlrs.model.xapi.XApiObject;
+import org.apereo.openlrs.model.xapi.XApiObjectDefinition;
+import org.apereo.openlrs.model.xapi.XApiVerb;
+import org.apereo.openlrs.utils.OAuthUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Drives a running OpenLRS with synthetic LMS traffic at a fixed request
+ * rate and reports latency percentiles and throughput per endpoint.
+ *
+ * Each request goes to a random tenant, to a course picked with a skew
+ * towards the first courses (a few large courses, a long tail of small
+ * ones), and from a random student of that course. Caliper envelopes go
+ * to /v1/caliper, xAPI statement arrays to /v1/xAPI/statements, both
+ * signed with OAuth 1.0 HMAC-SHA1 or sent with Basic credentials.
+ *
+ * Requests are scheduled open loop, and latency is measured from when a
+ * request was due rather than when it was sent, so a stalled server shows
+ * up in the percentiles instead of just lowering the rate.
+ *
+ * Usage (all options are optional):
+ *   java -cp benchmarks/target/benchmarks.jar org.apereo.openlrs.benchmarks.LoadGenerator
+ *     --url=http://localhost:8090 --tenants=openlrs:openlrs --auth=oauth
+ *     --rate=200 --duration=60 --warmup=10 --threads=64 --xapiShare=0.5
+ *     --batch=10 --courses=200 --students=40 --backend=InMemoryReaderWriter
+ *     --out=load-result.json
+ *
+ * --backend only labels the report with the writer the server was started
+ * with; run once per backend to compare them.
+ */
+public final class LoadGenerator {
+
+  private static final String CALIPER_CONTEXT = "http://purl.imsglobal.org/ctx/caliper/v1/Context";
+  private static final String[] VERBS = {
+      "http://adlnet.gov/expapi/verbs/experienced", "http://adlnet.gov/expapi/verbs/launched",
+      "http://adlnet.gov/expapi/verbs/completed", "http://adlnet.gov/expapi/verbs/answered" };
+  private static final String[] ACTIONS = {
+      "http://purl.imsglobal.org/vocab/caliper/v1/action#NavigatedTo",
+      "http://purl.imsglobal.org/vocab/caliper/v1/action#Viewed",
+      "http://purl.imsglobal.org/vocab/caliper/v1/action#Started",
+      "http://purl.imsglobal.org/vocab/caliper/v1/action#Submitted" };
+
+  private final Map<String, String> options;
+  private final String url;
+  private final List<String[]> tenants = new ArrayList<String[]>();
+  private final boolean oauth;
+  private final double rate;
+  private final long durationNanos;
+  private final long warmupNanos;
+  private final int threads;
+  private final double xapiShare;
+  private final int batch;
+  private final int courses;
+  private final int students;
+  private final ObjectWriter writer;
+
+  private final Map<String, EndpointStats> stats = new LinkedHashMap<String, EndpointStats>();
+  private final AtomicLong sequence = new AtomicLong();
+  private long start;
+
+  private LoadGenerator(Map<String, String> options) {
+    this.options = options;
+    url = option("url", "http://localhost:8090").replaceAll("/+$", "");
+    for (String tenant : option("tenants", "openlrs:openlrs").split(",")) {
+      String[] keyAndSecret = tenant.split(":", 2);
+      if (keyAndSecret.length != 2) {
+        throw new IllegalArgumentException(String.format("Tenant %s is not key:secret", tenant));
+      }
+      tenants.add(keyAndSecret);
+    }
+    oauth = "oauth".equalsIgnoreCase(option("auth", "oauth"));
+    rate = Double.parseDouble(option("rate", "200"));
+    durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "60")));
+    warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "10")));
+    threads = Integer.parseInt(option("threads", "64"));
+    xapiShare = Double.parseDouble(option("xapiShare", "0.5"));
+    batch = Integer.parseInt(option("batch", "10"));
+    courses = Integer.parseInt(option("courses", "200"));
+    students = Integer.parseInt(option("students", "40"));
+    writer = new Application().objectMapper().writer();
+
+    stats.put("/v1/caliper", new EndpointStats());
+    stats.put("/v1/xAPI/statements", new EndpointStats());
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new TreeMap<String, String>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException(String.format("Expected --name=value, got %s", arg));
+      }
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+    new LoadGenerator(options).run();
+  }
+
+  private void run() throws Exception {
+    // HttpURLConnection keeps only 5 idle connections per host by default
+    System.setProperty("http.maxConnections", String.valueOf(threads));
+
+    System.out.println(String.format("Sending %.0f requests/s of %d events for %ds after %ds warmup to %s",
+        rate, batch, TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos), url));
+
+    // build one of each payload up front so class initialization is not timed
+    envelope(0, 0, ThreadLocalRandom.current());
+    statements(0, 0, ThreadLocalRandom.current());
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    start = System.nanoTime();
+    for (int i = 0; i < threads; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          send();
+        }
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(durationNanos + warmupNanos + TimeUnit.MINUTES.toNanos(5), TimeUnit.NANOSECONDS);
+
+    report();
+  }
+
+  private void send() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    while (true) {
+      long due = start + (long) (sequence.getAndIncrement() * 1e9 / rate);
+      if (due - start >= warmupNanos + durationNanos) {
+        return;
+      }
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+
+      int tenant = random.nextInt(tenants.size());
+      // squaring a uniform draw puts most of the traffic on the first courses
+      double draw = random.nextDouble();
+      int course = (int) (draw * draw * courses);
+      boolean xapi = random.nextDouble() < xapiShare;
+      String path = xapi ? "/v1/xAPI/statements" : "/v1/caliper";
+
+      int status;
+      try {
+        byte[] body = xapi ? statements(tenant, course, random) : envelope(tenant, course, random);
+        status = post(path, tenants.get(tenant), body, xapi);
+      }
+      catch (IOException e) {
+        status = -1;
+      }
+
+      if (due - start >= warmupNanos) {
+        stats.get(path).record(status, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due), batch);
+      }
+    }
+  }
+
+  private int post(String path, String[] tenant, byte[] body, boolean xapi) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setFixedLengthStreamingMode(body.length);
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setRequestProperty("Authorization", authorization(url + path, tenant[0], tenant[1]));
+    if (xapi) {
+      connection.setRequestProperty("X-Experience-API-Version", "1.0.1");
+    }
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body);
+    }
+
+    int status = connection.getResponseCode();
+    // the body has to be read to the end for the connection to be reused
+    InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    if (in != null) {
+      try {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+          // discard
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    return status;
+  }
+
+  private String authorization(String requestUrl, String key, String secret) {
+    if (!oauth) {
+      return "Basic " + Base64.getEncoder().encodeToString((key + ":" + secret).getBytes(StandardCharsets.UTF_8));
+    }
+    Map<String, String> params = new TreeMap<String, String>();
+    params.put("oauth_consumer_key", key);
+    params.put("oauth_nonce", UUID.randomUUID().toString().replace("-", ""));
+    params.put("oauth_signature_method", "HMAC-SHA1");
+    params.put("oauth_timestamp", String.valueOf(System.currentTimeMillis() / 1000));
+    params.put("oauth_version", "1.0");
+    params.put("oauth_signature", OAuthUtils.sign(secret, params, "HmacSHA1", "POST", requestUrl));
+
+    StringBuilder header = new StringBuilder("OAuth ");
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      if (header.length() > 6) {
+        header.append(", ");
+      }
+      header.append(param.getKey()).append("=\"").append(percentEncode(param.getValue())).append('"');
+    }
+    return header.toString();
+  }
+
+  private byte[] envelope(int tenant, int course, ThreadLocalRandom random) throws IOException {
+    DateTime now = new DateTime(DateTimeZone.UTC);
+    String courseId = courseId(tenant, course);
+    Group group = new Group(courseId, CALIPER_CONTEXT, "http://purl.imsglobal.org/caliper/v1/lis/CourseSection",
+        "Course " + course, null, null, null);
+
+    List<Event> data = new ArrayList<Event>(batch);
+    for (int i = 0; i < batch; i++) {
+      int student = random.nextInt(students);
+      Actor actor = new Actor(studentId(tenant, course, student), CALIPER_CONTEXT,
+          "http://purl.imsglobal.org/caliper/v1/lis/Person", "Student " + student, null, null);
+      Object object = new Object(courseId + "/pages/" + random.nextInt(50), CALIPER_CONTEXT,
+          "http://purl.imsglobal.org/caliper/v1/WebPage", "Page", null, null);
+      data.add(new Event("urn:uuid:" + UUID.randomUUID(), CALIPER_CONTEXT,
+          "http://purl.imsglobal.org/caliper/v1/NavigationEvent", now, null, actor,
+          ACTIONS[random.nextInt(ACTIONS.length)], object, null, group, null));
+    }
+
+    Map<String, java.lang.Object> envelope = new LinkedHashMap<String, java.lang.Object>();
+    envelope.put("sensor", "https://lms" + tenant + ".example.edu/sensor");
+    envelope.put("sendTime", now);
+    envelope.put("data", data);
+    return writer.writeValueAsBytes(envelope);
+  }
+
+  private byte[] statements(int tenant, int course, ThreadLocalRandom random) throws IOException {
+    String courseId = courseId(tenant, course);
+    XApiObjectDefinition courseDefinition = new XApiObjectDefinition();
+    courseDefinition.setType("http://adlnet.gov/expapi/activities/course");
+    courseDefinition.setName(Collections.singletonMap("en-US", "Course " + course));
+    XApiObject courseObject = new XApiObject();
+    courseObject.setId(courseId);
+    courseObject.setDefinition(courseDefinition);
+    XApiContextActivities activities = new XApiContextActivities();
+    activities.setGrouping(Collections.singletonList(courseObject));
+    XApiContext context = new XApiContext();
+    context.setPlatform("Example LMS");
+    context.setContextActivities(activities);
+    String timestamp = new DateTime(DateTimeZone.UTC).toString();
+
+    List<Statement> statements = new ArrayList<Statement>(batch);
+    for (int i = 0; i < batch; i++) {
+      int student = random.nextInt(students);
+      XApiActor actor = new XApiActor();
+      actor.setMbox("mailto:" + studentId(tenant, course, student).replaceAll("[^a-z0-9]", "") + "@example.edu");
+      actor.setName("Student " + student);
+
+      XApiVerb verb = new XApiVerb();
+      verb.setId(VERBS[random.nextInt(VERBS.length)]);
+
+      XApiObjectDefinition definition = new XApiObjectDefinition();
+      definition.setType("http://adlnet.gov/expapi/activities/link");
+      XApiObject object = new XApiObject();
+      object.setId(courseId + "/pages/" + random.nextInt(50));
+      object.setDefinition(definition);
+
+      Statement statement = new Statement();
+      statement.setId(UUID.randomUUID().toString());
+      statement.setActor(actor);
+      statement.setVerb(verb);
+      statement.setObject(object);
+      statement.setContext(context);
+      statement.setTimestamp(timestamp);
+      statements.add(statement);
+    }
+    return writer.writeValueAsBytes(statements);
+  }
+
+  private static String courseId(int tenant, int course) {
+    return "https://lms" + tenant + ".example.edu/courses/" + course;
+  }
+
+  private static String studentId(int tenant, int course, int student) {
+    return "https://lms" + tenant + ".example.edu/users/c" + course + "s" + student;
+  }
+
+  private void report() throws IOException {
+    double seconds = durationNanos / 1e9;
+    String backend = option("backend", "unknown");
+    List<Map<String, java.lang.Object>> results = new ArrayList<Map<String, java.lang.Object>>();
+
+    System.out.println(String.format("%-22s %-22s %9s %7s %9s %9s %9s %9s %9s %9s",
+        "endpoint", "backend", "requests", "errors", "req/s", "events/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+    for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+      EndpointStats endpoint = entry.getValue();
+      long requests = endpoint.latency.count();
+      Map<String, java.lang.Object> result = new LinkedHashMap<String, java.lang.Object>();
+      result.put("endpoint", entry.getKey());
+      result.put("backend", backend);
+      result.put("requests", requests);
+      result.put("errors", endpoint.errors.sum());
+      Map<Integer, Long> statuses = new TreeMap<Integer, Long>();
+      for (Map.Entry<Integer, LongAdder> status : endpoint.statuses.entrySet()) {
+        statuses.put(status.getKey(), status.getValue().sum());
+      }
+      result.put("statuses", statuses);
+      result.put("requestsPerSecond", endpoint.ok.sum() / seconds);
+      result.put("eventsPerSecond", endpoint.events.sum() / seconds);
+      result.put("p50Millis", endpoint.latency.percentile(0.5) / 1000.0);
+      result.put("p99Millis", endpoint.latency.percentile(0.99) / 1000.0);
+      result.put("p999Millis", endpoint.latency.percentile(0.999) / 1000.0);
+      result.put("maxMillis", endpoint.latency.max() / 1000.0);
+      results.add(result);
+
+      System.out.println(String.format("%-22s %-22s %9d %7d %9.1f %9.1f %9.2f %9.2f %9.2f %9.2f",
+          result.get("endpoint"), backend, requests, result.get("errors"), result.get("requestsPerSecond"),
+          result.get("eventsPerSecond"), result.get("p50Millis"), result.get("p99Millis"),
+          result.get("p999Millis"), result.get("maxMillis")));
+      if (!statuses.isEmpty()) {
+        System.out.println(String.format("%-22s statuses %s", "", statuses));
+      }
+    }
+
+    String out = options.get("out");
+    if (out != null) {
+      new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(out), results);
+      System.out.println(String.format("Results written to %s", out));
+    }
+  }
+
+  private String option(String name, String defaultValue) {
+    String value = options.get(name);
+    return value != null ? value : defaultValue;
+  }
+
+  private static String percentEncode(String s) {
+    StringBuilder encoded = new StringBuilder(s.length());
+    for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+      char c = (char) (b & 0xff);
+      if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+          || c == '-' || c == '.' || c == '_' || c == '~') {
+        encoded.append(c);
+      }
+      else {
+        encoded.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+            .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+      }
+    }
+    return encoded.toString();
+  }
+
+  private static class EndpointStats {
+    private final Histogram latency = new Histogram();
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    /** non-2xx responses by status, -1 for connection failures */
+    private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<Integer, LongAdder>();
+
+    void record(int status, long micros, int batch) {
+      latency.record(micros);
+      if (status >= 200 && status < 300) {
+        ok.increment();
+        events.add(batch);
+      }
+      else {
+        errors.increment();
+        statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+      }
+    }
+  }
+
+}
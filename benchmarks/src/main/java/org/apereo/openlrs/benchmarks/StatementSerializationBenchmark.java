@@ -0,0 +1,90 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apereo.openlrs.Application;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.xapi.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Jackson round trips of the two request bodies, through the same mapper
+ * configuration the application registers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatementSerializationBenchmark {
+
+  private ObjectWriter writer;
+  private ObjectReader eventReader;
+  private ObjectReader statementReader;
+  private Event event;
+  private Statement statement;
+  private byte[] eventJson;
+  private byte[] statementJson;
+
+  @Setup
+  public void setup() throws Exception {
+    ObjectMapper mapper = new Application().objectMapper();
+    writer = mapper.writer();
+    eventReader = mapper.reader(Event.class);
+    statementReader = mapper.reader(Statement.class);
+    event = Fixtures.event(0);
+    statement = Fixtures.statement(0);
+    eventJson = writer.writeValueAsBytes(event);
+    statementJson = writer.writeValueAsBytes(statement);
+  }
+
+  @Benchmark
+  public byte[] writeEvent() throws Exception {
+    return writer.writeValueAsBytes(event);
+  }
+
+  @Benchmark
+  public Event readEvent() throws Exception {
+    return eventReader.readValue(eventJson);
+  }
+
+  @Benchmark
+  public byte[] writeStatement() throws Exception {
+    return writer.writeValueAsBytes(statement);
+  }
+
+  @Benchmark
+  public Statement readStatement() throws Exception {
+    return statementReader.readValue(statementJson);
+  }
+
+}
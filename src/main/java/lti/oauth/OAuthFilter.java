@@ -16,7 +16,10 @@ import lti.LaunchRequest;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.apereo.openlrs.KeyManager;
+import org.apereo.openlrs.NonceStore;
+import org.apereo.openlrs.utils.OAuthUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -33,6 +36,12 @@ public class OAuthFilter extends OncePerRequestFilter {
 	
 	@Autowired
 	private KeyManager keyManager;
+	
+	@Autowired
+	private NonceStore nonceStore;
+	
+	@Value("${openlrs.replayProtection.enabled:true}")
+	private boolean replayProtection;
 
 
 	@Override
@@ -61,7 +70,7 @@ public class OAuthFilter extends OncePerRequestFilter {
 			return;
 		}
 
-        if (!signature.equals(calculatedSignature)) {
+        if (!OAuthUtils.constantTimeEquals(signature, calculatedSignature)) {
         	// try again with http
 	        String recalculatedSignature = null;
 	        
@@ -79,12 +88,22 @@ public class OAuthFilter extends OncePerRequestFilter {
 				}
 	        }
 	        
-	        if (!signature.equals(recalculatedSignature)) {
+	        if (signature == null || !OAuthUtils.constantTimeEquals(signature, recalculatedSignature)) {
 	        	res.sendError(HttpStatus.UNAUTHORIZED.value());
 	        	return;
 	        }
         }
 
+        if (replayProtection) {
+        	String nonce = alphaSortedMap.get("oauth_nonce");
+        	String timestamp = alphaSortedMap.get("oauth_timestamp");
+        	if (StringUtils.isBlank(nonce) || !StringUtils.isNumeric(timestamp)
+        			|| !nonceStore.checkAndRecord(key, Long.parseLong(timestamp), nonce)) {
+        		res.sendError(HttpStatus.UNAUTHORIZED.value());
+        		return;
+        	}
+        }
+
 		fc.doFilter(req, res);
 	}
 
@@ -3,15 +3,14 @@
  */
 package lti.oauth;
 
-import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.Map;
 import java.util.SortedMap;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
+import org.apereo.openlrs.utils.OAuthSigner;
 
 
 /**
@@ -37,36 +36,28 @@ public class OAuthMessageSigner {
 	 */
 	public String sign(String secret, String algorithm, String method, 
 				String url, SortedMap<String, String> parameters) throws Exception {
-		SecretKeySpec secretKeySpec = new SecretKeySpec((secret.concat(OAuthUtil.AMPERSAND)).getBytes(),algorithm);
-        Mac mac = Mac.getInstance(secretKeySpec.getAlgorithm());
-        mac.init(secretKeySpec);
-        
-        StringBuilder signatureBase = new StringBuilder(OAuthUtil.percentEncode(method));
-        signatureBase.append(OAuthUtil.AMPERSAND);
-        
-        signatureBase.append(OAuthUtil.percentEncode(url));
-        signatureBase.append(OAuthUtil.AMPERSAND);
+		OAuthSigner signer = OAuthSigner.get();
+		signer.appendEncoded(method).append(OAuthUtil.AMPERSAND);
+		signer.appendEncoded(url).append(OAuthUtil.AMPERSAND);
         
         int count = 0;
-        for (String key : parameters.keySet()) {
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
         	count++;
-           	signatureBase.append(OAuthUtil.percentEncode(OAuthUtil.percentEncode(key)));
-        	signatureBase.append(URLEncoder.encode(OAuthUtil.EQUAL, OAuthUtil.ENCODING));
-        	signatureBase.append(OAuthUtil.percentEncode(OAuthUtil.percentEncode(parameters.get(key))));
+        	signer.appendEncodedTwice(entry.getKey());
+        	signer.append("%3D");
+        	signer.appendEncodedTwice(entry.getValue());
         	
         	if (count < parameters.size()) {
-        		signatureBase.append(URLEncoder.encode(OAuthUtil.AMPERSAND, OAuthUtil.ENCODING));
+        		signer.append("%26");
         	}        	
         }
 
 		if (log.isDebugEnabled()) {
-			log.debug(signatureBase.toString());
+			log.debug(signer.baseString());
 		}
 		
-		byte[] bytes = mac.doFinal(signatureBase.toString().getBytes());
-		byte[] encodedMacBytes = Base64.encodeBase64(bytes);
-        
-		return new String(encodedMacBytes);
+		// LTI keys the HMAC with the secret as is, not percent-encoded
+		return new String(signer.sign(algorithm, secret, false), StandardCharsets.US_ASCII);
 	}	
 	
 	/**
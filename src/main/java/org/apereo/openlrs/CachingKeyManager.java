@@ -0,0 +1,116 @@
+package org.apereo.openlrs;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.apereo.openlrs.exceptions.NotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Sits in front of the configured KeyManager (looked up by its
+ * openlrs.keyManager name) so the filter and the controllers stop going to
+ * the tenant table on every request. Found keys are kept for ttlSeconds,
+ * unknown keys for the shorter negativeTtlSeconds so a newly added tenant
+ * is picked up quickly; both caches hold at most maxSize keys.
+ *
+ * On by default, disable with openlrs.keyManagerCache.enabled=false.
+ */
+@ConditionalOnProperty(name="openlrs.keyManagerCache.enabled", havingValue="true", matchIfMissing=true)
+@Primary
+@Component
+public class CachingKeyManager implements KeyManager {
+
+  @Value("${openlrs.keyManager}")
+  private String keyManagerName;
+
+  @Value("${openlrs.keyManagerCache.ttlSeconds:60}")
+  private long ttlSeconds;
+
+  @Value("${openlrs.keyManagerCache.negativeTtlSeconds:10}")
+  private long negativeTtlSeconds;
+
+  @Value("${openlrs.keyManagerCache.maxSize:10000}")
+  private long maxSize;
+
+  @Autowired private ApplicationContext applicationContext;
+
+  private KeyManager delegate;
+  private Cache<String, Entry> found;
+  private Cache<String, NotFoundException> notFound;
+
+  @PostConstruct
+  public void init() {
+    init(applicationContext.getBean(keyManagerName, KeyManager.class));
+  }
+
+  void init(KeyManager delegate) {
+    this.delegate = delegate;
+    found = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+    notFound = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(negativeTtlSeconds, TimeUnit.SECONDS).build();
+  }
+
+  @Override
+  public String getSecretForKey(String key) throws NotFoundException {
+    return lookup(key).secret;
+  }
+
+  @Override
+  public Tenant getTenantForKey(String key) throws NotFoundException {
+    return lookup(key).tenant;
+  }
+
+  /**
+   * Drops everything cached for the key, e.g. after its secret was rotated.
+   */
+  public void evict(String key) {
+    found.invalidate(key);
+    notFound.invalidate(key);
+  }
+
+  private Entry lookup(String key) {
+    if (key == null) {
+      // let the delegate decide how to report a missing key
+      return new Entry(delegate.getTenantForKey(key), delegate.getSecretForKey(key));
+    }
+
+    Entry entry = found.getIfPresent(key);
+    if (entry != null) {
+      return entry;
+    }
+    NotFoundException cachedMiss = notFound.getIfPresent(key);
+    if (cachedMiss != null) {
+      throw new NotFoundException(cachedMiss.getMessage());
+    }
+
+    // concurrent misses for the same key may both load, which is harmless
+    try {
+      entry = new Entry(delegate.getTenantForKey(key), delegate.getSecretForKey(key));
+    }
+    catch (NotFoundException e) {
+      notFound.put(key, e);
+      throw e;
+    }
+    found.put(key, entry);
+    return entry;
+  }
+
+  private static class Entry {
+    private final Tenant tenant;
+    private final String secret;
+
+    Entry(Tenant tenant, String secret) {
+      this.tenant = tenant;
+      this.secret = secret;
+    }
+  }
+
+}
@@ -11,7 +11,7 @@ import org.springframework.stereotype.Component;
  *
  */
 @ConditionalOnProperty(name="openlrs.keyManager", havingValue="DatabaseKeyManager")
-@Component
+@Component("DatabaseKeyManager")
 public class DatabaseKeyManager implements KeyManager {
   
   @Autowired
@@ -0,0 +1,80 @@
+package org.apereo.openlrs;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps nonces in a ring of hash sets, one per slot of bucketSeconds of
+ * oauth_timestamp. The ring spans the whole window on both sides of now,
+ * so a slot is only reused once every timestamp it held has left the
+ * window; reusing it drops its nonces. Checks are a bucket lookup and a
+ * set insert, and memory is bounded by the nonces seen within the window.
+ *
+ * Each node has its own ring, see RedisNonceStore for clusters.
+ */
+@ConditionalOnProperty(name="openlrs.replayProtection.nonceStore", havingValue="InMemoryNonceStore", matchIfMissing=true)
+@Component("InMemoryNonceStore")
+public class InMemoryNonceStore implements NonceStore {
+
+  @Value("${openlrs.replayProtection.windowSeconds:300}")
+  private long windowSeconds;
+
+  private long bucketSeconds;
+  private AtomicReferenceArray<Slot> slots;
+
+  @PostConstruct
+  public void init() {
+    init(windowSeconds);
+  }
+
+  void init(long windowSeconds) {
+    this.windowSeconds = windowSeconds;
+    bucketSeconds = Math.max(1, windowSeconds / 30);
+    int size = (int) (2 * windowSeconds / bucketSeconds) + 2;
+    slots = new AtomicReferenceArray<Slot>(size);
+    for (int i = 0; i < size; i++) {
+      slots.set(i, new Slot(Long.MIN_VALUE));
+    }
+  }
+
+  @Override
+  public boolean checkAndRecord(String consumerKey, long timestamp, String nonce) {
+    return checkAndRecord(consumerKey, timestamp, nonce, System.currentTimeMillis() / 1000);
+  }
+
+  boolean checkAndRecord(String consumerKey, long timestamp, String nonce, long now) {
+    if (Math.abs(now - timestamp) > windowSeconds) {
+      return false;
+    }
+
+    long index = Math.floorDiv(timestamp, bucketSeconds);
+    int i = (int) Math.floorMod(index, (long) slots.length());
+    Slot slot = slots.get(i);
+    while (slot.index != index) {
+      if (slot.index > index) {
+        // the slot has moved on, so this timestamp is too old
+        return false;
+      }
+      Slot next = new Slot(index);
+      slot = slots.compareAndSet(i, slot, next) ? next : slots.get(i);
+    }
+    return slot.nonces.add(consumerKey + '\n' + timestamp + '\n' + nonce);
+  }
+
+  private static class Slot {
+    private final long index;
+    private final Set<String> nonces = ConcurrentHashMap.newKeySet();
+
+    Slot(long index) {
+      this.index = index;
+    }
+  }
+
+}
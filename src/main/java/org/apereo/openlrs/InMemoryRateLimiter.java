@@ -0,0 +1,106 @@
+package org.apereo.openlrs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * A token bucket per tenant, kept as the time at which the bucket will be
+ * full again (the generic cell rate algorithm). Each request moves that
+ * time on by one interval, and is rejected if it would then lie more than
+ * burst intervals ahead of now. That is a single compareAndSet, so
+ * requests of one tenant never wait on a lock.
+ *
+ * A tenant's own limits come from its rate_limit and rate_limit_burst
+ * columns, otherwise from openlrs.rateLimit. A rate of 0 or less means no
+ * limit. Each node has its own buckets, see RedisRateLimiter for clusters.
+ */
+@ConditionalOnProperty(name="openlrs.rateLimit.limiter", havingValue="InMemoryRateLimiter", matchIfMissing=true)
+@Component("InMemoryRateLimiter")
+public class InMemoryRateLimiter implements RateLimiter {
+
+  @Value("${openlrs.rateLimit.requestsPerSecond:100}")
+  private double requestsPerSecond;
+
+  @Value("${openlrs.rateLimit.burst:200}")
+  private int burst;
+
+  private final ConcurrentMap<Long, Bucket> buckets = new ConcurrentHashMap<Long, Bucket>();
+
+  @PostConstruct
+  public void init() {
+    init(requestsPerSecond, burst);
+  }
+
+  void init(double requestsPerSecond, int burst) {
+    this.requestsPerSecond = requestsPerSecond;
+    this.burst = burst;
+  }
+
+  @Override
+  public long tryAcquire(Tenant tenant) {
+    return tryAcquire(tenant, System.nanoTime());
+  }
+
+  long tryAcquire(Tenant tenant, long now) {
+    double rate = rate(tenant);
+    if (rate <= 0) {
+      return 0;
+    }
+    int tenantBurst = burst(tenant);
+    Bucket bucket = buckets.get(tenant.getId());
+    if (bucket == null || bucket.rate != rate || bucket.burst != tenantBurst) {
+      // a new tenant, or its limits changed: start from a full bucket
+      bucket = buckets.compute(tenant.getId(),
+          (id, b) -> b != null && b.rate == rate && b.burst == tenantBurst ? b : new Bucket(rate, tenantBurst, now));
+    }
+    return bucket.tryAcquire(now);
+  }
+
+  double rate(Tenant tenant) {
+    return tenant.getRateLimit() != null ? tenant.getRateLimit() : requestsPerSecond;
+  }
+
+  int burst(Tenant tenant) {
+    return Math.max(1, tenant.getRateLimitBurst() != null ? tenant.getRateLimitBurst() : burst);
+  }
+
+  private static class Bucket {
+    private final double rate;
+    private final int burst;
+    private final long interval;
+    private final long capacity;
+    /** when the bucket is full again, in System.nanoTime() */
+    private final AtomicLong full;
+
+    Bucket(double rate, int burst, long now) {
+      this.rate = rate;
+      this.burst = burst;
+      interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+      capacity = interval * burst;
+      full = new AtomicLong(now);
+    }
+
+    long tryAcquire(long now) {
+      while (true) {
+        long current = full.get();
+        long next = Math.max(current, now) + interval;
+        long wait = next - now - capacity;
+        if (wait > 0) {
+          return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+        }
+        if (full.compareAndSet(current, next)) {
+          return 0;
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,17 @@
+package org.apereo.openlrs;
+
+/**
+ * Remembers the OAuth nonces seen within the timestamp window so a signed
+ * request cannot be replayed.
+ */
+public interface NonceStore {
+
+  /**
+   * Records the nonce for the consumer key and timestamp (in seconds).
+   *
+   * @return true the first time a combination is seen, false if it was
+   * seen before or the timestamp lies outside the window
+   */
+  boolean checkAndRecord(String consumerKey, long timestamp, String nonce);
+
+}
@@ -29,6 +29,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.apereo.openlrs.metrics.Metrics;
 import org.apereo.openlrs.utils.OAuthUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -46,7 +47,14 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 	
 	@Value("${auth.enabled}")
 	private boolean enabled;
+	@Value("${openlrs.replayProtection.enabled:true}")
+	private boolean replayProtection;
+	@Value("${openlrs.rateLimit.enabled:false}")
+	private boolean rateLimiting;
 	@Autowired KeyManager keyManager;
+	@Autowired NonceStore nonceStore;
+	@Autowired RateLimiter rateLimiter;
+	@Autowired Metrics metrics;
 
 	@Override
 	protected void doFilterInternal(HttpServletRequest request,
@@ -59,6 +67,7 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 		}
 		
 		log.debug("start authentication");
+		long start = System.nanoTime();
 		
 		String authorizationHeader = request.getHeader("Authorization");
 		
@@ -69,11 +78,11 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 		if (StringUtils.isNotBlank(authorizationHeader)) {
 			if (StringUtils.containsIgnoreCase(authorizationHeader, "oauth")) {
 			  log.debug("is oauth");
-				authenticateOAuth(authorizationHeader, request, response, filterChain);
+				authenticateOAuth(authorizationHeader, request, response, filterChain, start);
 			}
 			else {
 			  log.debug("is basic");
-				authenticateBasic(authorizationHeader, request, response, filterChain);
+				authenticateBasic(authorizationHeader, request, response, filterChain, start);
 			}
 		}
 		else if ("OPTIONS".equals(request.getMethod())) {
@@ -86,7 +95,7 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 	}
 	
 	private void authenticateOAuth(String authorizationHeader, HttpServletRequest request,
-			HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+			HttpServletResponse response, FilterChain filterChain, long start) throws IOException, ServletException {
 		Map<String,String> oauth_parameters = OAuthUtils.decodeAuthorization(authorizationHeader);
 		if (oauth_parameters != null && oauth_parameters.containsKey("oauth_consumer_key")) {
 			final String oauth_consumer_key = oauth_parameters.get("oauth_consumer_key");
@@ -110,26 +119,37 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 				}
 				
 				final String signature = oauth_parameters.get("oauth_signature");
-				final String calculatedSignature = OAuthUtils.sign(secret, normalizedParams, 
+				final boolean verified = OAuthUtils.verify(signature, secret, normalizedParams, 
 						OAuthUtils.mapToJava(oauth_parameters.get("oauth_signature_method")), request.getMethod(), request.getRequestURL().toString());
 				
-				if (signature.equals(calculatedSignature)) {	
-					request.setAttribute("tenant", tenant);
-					//response.setHeader("institution", tenant.getName());
-					filterChain.doFilter(request, response);
+				if (verified && replayProtection && !isFresh(oauth_consumer_key, oauth_parameters)) {
+				  log.error("Stale timestamp or reused nonce");
+					recordAuthentication("oauth", start, tenant, false);
+					unauthorized(response, "Stale timestamp or reused nonce", "OAuth");
+				}
+				else if (verified) {	
+					recordAuthentication("oauth", start, tenant, true);
+					if (admit(tenant, response)) {
+						request.setAttribute("tenant", tenant);
+						//response.setHeader("institution", tenant.getName());
+						filterChain.doFilter(request, response);
+					}
 				}
 				else {
 				  log.error("Signatures do not match");
+					recordAuthentication("oauth", start, tenant, false);
 					unauthorized(response, "Signatures do not match", "OAuth");
 				}
 			}
 			else {
 			  log.error("Invalid consumer key");
+				recordAuthentication("oauth", start, null, false);
 				unauthorized(response, "Invalid consumer key", "OAuth");
 			}
 		}
 		else {
 		  log.error("Invalid authentication token");
+			recordAuthentication("oauth", start, null, false);
 			unauthorized(response, "Invalid authentication token", "OAuth");
 		}
 	}
@@ -137,7 +157,7 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 	
 	
 	private void authenticateBasic(String authorizationHeader, HttpServletRequest request,
-			HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+			HttpServletResponse response, FilterChain filterChain, long start) throws IOException, ServletException {
 		
 		StringTokenizer st = new StringTokenizer(authorizationHeader);
 		if (st.hasMoreTokens()) {
@@ -157,15 +177,20 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 	        			String password = keyManager.getSecretForKey(_username);
 	        			Tenant tenant = keyManager.getTenantForKey(_username);
 	        			
-	        			if (!password.equals(_password)) {
+	        			if (password == null || !OAuthUtils.constantTimeEquals(password, _password)) {
+	        				recordAuthentication("basic", start, tenant, false);
 	        				unauthorized(response, "Bad credentials", "Basic");
 	        			}
 	        			else {
-	        				request.setAttribute("tenant", tenant);
-	        				filterChain.doFilter(request, response);
+	        				recordAuthentication("basic", start, tenant, true);
+	        				if (admit(tenant, response)) {
+	        					request.setAttribute("tenant", tenant);
+	        					filterChain.doFilter(request, response);
+	        				}
 	        			}
 	        		} 
 	        		else {
+	        			recordAuthentication("basic", start, null, false);
 	        			unauthorized(response, "Invalid authentication token", "Basic");
 	        		}
 	        	} 
@@ -176,6 +201,44 @@ public class OpenLRSAuthenticationFilter extends OncePerRequestFilter {
 		}
 	}
 	
+	private boolean isFresh(String consumerKey, Map<String, String> oauthParameters) {
+		String nonce = oauthParameters.get("oauth_nonce");
+		String timestamp = oauthParameters.get("oauth_timestamp");
+		if (StringUtils.isBlank(nonce) || !StringUtils.isNumeric(timestamp)) {
+			return false;
+		}
+		return nonceStore.checkAndRecord(consumerKey, Long.parseLong(timestamp), nonce);
+	}
+	
+	/**
+	 * Charges the request to the tenant's rate limit, answering 429 with
+	 * Retry-After (in whole seconds) when the tenant is over it.
+	 */
+	private boolean admit(Tenant tenant, HttpServletResponse response) throws IOException {
+		if (!rateLimiting || tenant == null) {
+			return true;
+		}
+		long waitMillis = rateLimiter.tryAcquire(tenant);
+		if (waitMillis == 0) {
+			return true;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Tenant %d is over its rate limit", tenant.getId()));
+		}
+		response.setHeader("Retry-After", String.valueOf((waitMillis + 999) / 1000));
+		response.sendError(429, "Rate limit exceeded, retry later");
+		return false;
+	}
+	
+	/**
+	 * Times the authentication itself, up to but not including the rest
+	 * of the filter chain.
+	 */
+	private void recordAuthentication(String scheme, long start, Tenant tenant, boolean authenticated) {
+		metrics.recordTime("openlrs.auth", System.nanoTime() - start, "scheme", scheme,
+				"tenant", tenant != null ? String.valueOf(tenant.getId()) : "unknown", "outcome", authenticated ? "success" : "rejected");
+	}
+	
 	private void unauthorized(HttpServletResponse response, String message, String type) throws IOException {
 		 response.setHeader("WWW-Authenticate", type + " realm=\"OpenLRS\"");
 		 response.sendError(401, message);
@@ -14,7 +14,7 @@ import org.springframework.stereotype.Component;
  *
  */
 @ConditionalOnProperty(name="openlrs.keyManager", havingValue="PropertiesFileKeyManager")
-@Component
+@Component("PropertiesFileKeyManager")
 public class PropertiesFileKeyManager implements KeyManager {
   
   @Value("${auth.basic.username}")
@@ -0,0 +1,17 @@
+package org.apereo.openlrs;
+
+/**
+ * Caps how many requests each tenant may make per second, with some
+ * burst allowance on top.
+ */
+public interface RateLimiter {
+
+  /**
+   * Takes one request from the tenant's allowance.
+   *
+   * @return 0 if the request is admitted, otherwise the milliseconds until
+   * the tenant may try again
+   */
+  long tryAcquire(Tenant tenant);
+
+}
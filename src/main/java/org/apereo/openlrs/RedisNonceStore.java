@@ -0,0 +1,68 @@
+package org.apereo.openlrs;
+
+import java.util.Collections;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shares nonces between nodes through Redis. Each nonce is a key set with
+ * NX and an expiry of twice the window, so Redis drops it once its
+ * timestamp can no longer pass the window check.
+ *
+ * The node's own {@link InMemoryNonceStore} is asked first, so a stale
+ * timestamp or a replay against the same node is rejected without going to
+ * Redis. If Redis is unavailable the local answer is used.
+ */
+@ConditionalOnProperty(name="openlrs.replayProtection.nonceStore", havingValue="RedisNonceStore")
+@Component("RedisNonceStore")
+public class RedisNonceStore implements NonceStore {
+
+  private Logger log = LoggerFactory.getLogger(RedisNonceStore.class);
+
+  private static final RedisScript<Long> SET_IF_ABSENT = new DefaultRedisScript<Long>(
+      "if redis.call('set', KEYS[1], '1', 'NX', 'EX', ARGV[1]) then return 1 else return 0 end", Long.class);
+
+  @Value("${openlrs.replayProtection.windowSeconds:300}")
+  private long windowSeconds;
+
+  @Autowired private RedisConnectionFactory connectionFactory;
+
+  private StringRedisTemplate template;
+  private InMemoryNonceStore local;
+
+  @PostConstruct
+  public void init() {
+    template = new StringRedisTemplate(connectionFactory);
+    local = new InMemoryNonceStore();
+    local.init(windowSeconds);
+  }
+
+  @Override
+  public boolean checkAndRecord(String consumerKey, long timestamp, String nonce) {
+    if (!local.checkAndRecord(consumerKey, timestamp, nonce)) {
+      return false;
+    }
+
+    String key = String.format("openlrs-nonce:%s:%d:%s", consumerKey, timestamp, nonce);
+    try {
+      Long added = template.execute(SET_IF_ABSENT, Collections.singletonList(key), String.valueOf(2 * windowSeconds));
+      return added != null && added == 1;
+    }
+    catch (Exception e) {
+      log.warn("Unable to check the nonce in Redis, using this node's nonces only", e);
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+package org.apereo.openlrs;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shares each tenant's bucket between nodes through Redis, using the same
+ * algorithm as {@link InMemoryRateLimiter} in a script so the check and
+ * the update are atomic. Times are in microseconds of the nodes' clocks,
+ * so clock skew between nodes shifts a tenant's allowance by that much.
+ *
+ * The node's own buckets are asked first, so a tenant already over its
+ * limit on this node alone is rejected without going to Redis. If Redis
+ * is unavailable the local answer is used.
+ */
+@ConditionalOnProperty(name="openlrs.rateLimit.limiter", havingValue="RedisRateLimiter")
+@Component("RedisRateLimiter")
+public class RedisRateLimiter implements RateLimiter {
+
+  private Logger log = LoggerFactory.getLogger(RedisRateLimiter.class);
+
+  private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<Long>(
+      "local now = tonumber(ARGV[1]) "
+      + "local full = tonumber(redis.call('get', KEYS[1]) or ARGV[1]) "
+      + "local due = math.max(full, now) + tonumber(ARGV[2]) "
+      + "local wait = due - now - tonumber(ARGV[3]) "
+      + "if wait > 0 then return wait end "
+      + "redis.call('set', KEYS[1], string.format('%.0f', due), 'PX', math.ceil((due - now) / 1000) + 1) "
+      + "return 0", Long.class);
+
+  @Value("${openlrs.rateLimit.requestsPerSecond:100}")
+  private double requestsPerSecond;
+
+  @Value("${openlrs.rateLimit.burst:200}")
+  private int burst;
+
+  @Autowired private RedisConnectionFactory connectionFactory;
+
+  private StringRedisTemplate template;
+  private InMemoryRateLimiter local;
+
+  @PostConstruct
+  public void init() {
+    template = new StringRedisTemplate(connectionFactory);
+    local = new InMemoryRateLimiter();
+    local.init(requestsPerSecond, burst);
+  }
+
+  @Override
+  public long tryAcquire(Tenant tenant) {
+    long localWait = local.tryAcquire(tenant);
+    double rate = local.rate(tenant);
+    if (localWait > 0 || rate <= 0) {
+      return localWait;
+    }
+
+    long interval = Math.max(1, (long) (TimeUnit.SECONDS.toMicros(1) / rate));
+    long capacity = interval * local.burst(tenant);
+    long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    try {
+      Long wait = template.execute(ACQUIRE, Collections.singletonList("openlrs-ratelimit:" + tenant.getId()),
+          String.valueOf(now), String.valueOf(interval), String.valueOf(capacity));
+      return wait == null || wait <= 0 ? 0 : Math.max(1, TimeUnit.MICROSECONDS.toMillis(wait + 999));
+    }
+    catch (Exception e) {
+      log.warn("Unable to check the rate limit in Redis, using this node's buckets only", e);
+      return 0;
+    }
+  }
+
+}
@@ -41,6 +41,17 @@ public class Tenant implements Serializable {
   
   @Column(name = "active", nullable = false)
   private boolean active;
+
+  /**
+   * requests per second, null for openlrs.rateLimit.requestsPerSecond.
+   * Existing tables need sql/tenants-rate-limit.sql for this and the burst.
+   */
+  @Column(name = "rate_limit")
+  private Double rateLimit;
+
+  /** requests accepted at once above the rate, null for openlrs.rateLimit.burst */
+  @Column(name = "rate_limit_burst")
+  private Integer rateLimitBurst;
   
   @Temporal(TemporalType.TIMESTAMP)
   @Column(name = "created", nullable = false)
@@ -100,6 +111,22 @@ public class Tenant implements Serializable {
     this.active = active;
   }
 
+  public Double getRateLimit() {
+    return rateLimit;
+  }
+
+  public void setRateLimit(Double rateLimit) {
+    this.rateLimit = rateLimit;
+  }
+
+  public Integer getRateLimitBurst() {
+    return rateLimitBurst;
+  }
+
+  public void setRateLimitBurst(Integer rateLimitBurst) {
+    this.rateLimitBurst = rateLimitBurst;
+  }
+
   public Date getCreated() {
     return created;
   }
@@ -6,11 +6,11 @@ package org.apereo.openlrs.controllers.caliper;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apereo.openlrs.KeyManager;
@@ -18,28 +18,34 @@ import org.apereo.openlrs.Tenant;
 import org.apereo.openlrs.exceptions.InvalidRequestException;
 import org.apereo.openlrs.exceptions.NotFoundException;
 import org.apereo.openlrs.exceptions.caliper.InvalidCaliperFormatException;
+import org.apereo.openlrs.metrics.Metrics;
 import org.apereo.openlrs.model.event.Event;
-import org.apereo.openlrs.model.event.EventEnvelope;
 import org.apereo.openlrs.model.event.EventStats;
-import org.apereo.openlrs.model.event.StudentEventStats;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQueue;
 import org.apereo.openlrs.storage.Reader;
 import org.apereo.openlrs.storage.Writer;
+import org.apereo.openlrs.storage.stats.EventStatsAggregator;
 import org.apereo.openlrs.utils.AuthorizationUtils;
+import org.apereo.openlrs.utils.JsonUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -55,32 +61,85 @@ public class CaliperApiController {
 
   @Autowired private Writer writer;
   @Autowired private Reader reader;
+  @Autowired(required=false) private EventQueue eventQueue;
+  @Autowired(required=false) private EventStatsAggregator eventStatsAggregator;
+  @Autowired private Metrics metrics;
+  
+  @Value("${openlrs.cursor.maxLimit:1000}")
+  private int maxCursorLimit;
+  
+  @Value("${openlrs.ingest.batchSize:500}")
+  private int chunkSize;
   
   @RequestMapping(value = { "", "/" },
       method = RequestMethod.POST,
       consumes = "application/json", produces = "application/json;charset=utf-8")
-  public List<String> postHandler(@RequestBody String json, @RequestHeader(value="Authorization") String authorizationHeader)
+  public ResponseEntity<List<String>> postHandler(HttpServletRequest request, @RequestHeader(value="Authorization") String authorizationHeader)
         throws JsonProcessingException, IOException, InvalidCaliperFormatException, InvalidRequestException {
     List<String> ids = null;
+    HttpStatus status = HttpStatus.OK;
     String key = AuthorizationUtils.getKeyFromHeader(authorizationHeader);
     
     if (StringUtils.isNotBlank(key)) {
-      Tenant tenant = keyManager.getTenantForKey(key);       
+      Tenant tenant = AuthorizationUtils.getTenant(key, keyManager);       
 
       if (tenant != null) {
-        EventEnvelope ee = objectMapper.readValue(json,
-            new TypeReference<EventEnvelope>() {});
-        
-        if (ee != null) {
-          List<Event> events = ee.getData();
-          if (events != null && !events.isEmpty()) {
-            ids = new ArrayList<String>();
-            for (Event e : events) {
-              if (StringUtils.isBlank(e.getId())) {
-                e.setId(UUID.randomUUID().toString());
-                e.setStoredTime(new DateTime(DateTimeZone.UTC));
+        // the envelope's data is read one event at a time from the body
+        // and written in bounded chunks, never held whole in memory
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream())) {
+          if (JsonUtils.seekField(parser, "data")) {
+            JsonToken token = parser.getCurrentToken();
+            // a lone event in place of the array is accepted, as ACCEPT_SINGLE_VALUE_AS_ARRAY did
+            boolean single = (token == JsonToken.START_OBJECT);
+            if (single || token == JsonToken.START_ARRAY) {
+              DateTime storedTime = new DateTime(DateTimeZone.UTC);
+              List<Event> events = new ArrayList<Event>();
+              ids = new ArrayList<String>();
+              long parseNanos = 0;
+              int received = 0;
+              
+              while (true) {
+                if (!single) {
+                  JsonToken next = parser.nextToken();
+                  if (next == JsonToken.END_ARRAY) {
+                    break;
+                  }
+                  if (next != JsonToken.START_OBJECT) {
+                    // anything else would silently drop the rest of data
+                    throw new InvalidCaliperFormatException(String.format("Expected an event object in data, found %s", next));
+                  }
+                }
+                long parseStart = System.nanoTime();
+                Event e = parser.readValueAs(Event.class);
+                parseNanos += System.nanoTime() - parseStart;
+                received++;
+                // only the xAPI endpoint may attach a stored statement
+                e.setRawStatement(null);
+                if (StringUtils.isBlank(e.getId())) {
+                  e.setId(UUID.randomUUID().toString());
+                }
+                // cursor reads order by storedTime, so every event needs one
+                e.setStoredTime(storedTime);
+                events.add(e);
+                
+                if (events.size() == chunkSize) {
+                  status = store(events, String.valueOf(tenant.getId()), ids);
+                  events = new ArrayList<Event>();
+                }
+                if (single) {
+                  break;
+                }
+              }
+              
+              if (!events.isEmpty()) {
+                status = store(events, String.valueOf(tenant.getId()), ids);
+              }
+              String tenantId = String.valueOf(tenant.getId());
+              metrics.recordTime("openlrs.ingest.parse", parseNanos, "endpoint", "caliper", "tenant", tenantId);
+              metrics.recordValue("openlrs.ingest.request.size", received, "endpoint", "caliper", "tenant", tenantId);
+              if (ids.isEmpty()) {
+                ids = null;
               }
-              ids.add(writer.save(e, String.valueOf(tenant.getId())).getId());
             }
           }
         }
@@ -92,7 +151,25 @@ public class CaliperApiController {
     else {
       throw new InvalidRequestException("Tenant Key is required");
     }
-    return ids;
+    return new ResponseEntity<List<String>>(ids, status);
+  }
+  
+  /**
+   * Hands one chunk to the queue when async ingestion is on, otherwise to
+   * the writer, and collects the ids.
+   */
+  private HttpStatus store(List<Event> events, String tenantId, List<String> ids) {
+    if (eventQueue != null) {
+      eventQueue.enqueue(events, tenantId);
+      for (Event e : events) {
+        ids.add(e.getId());
+      }
+      return HttpStatus.ACCEPTED;
+    }
+    for (Event e : writer.saveAll(events, tenantId)) {
+      ids.add(e.getId());
+    }
+    return HttpStatus.OK;
   }
   
   @RequestMapping(value = { "", "/" },
@@ -109,7 +186,7 @@ public class CaliperApiController {
     String key = AuthorizationUtils.getKeyFromHeader(authorizationHeader);
     
     if (StringUtils.isNotBlank(key)) {
-      Tenant tenant = keyManager.getTenantForKey(key);       
+      Tenant tenant = AuthorizationUtils.getTenant(key, keyManager);       
 
       if (tenant != null) {
         if (StringUtils.isNotBlank(eventId)) {
@@ -136,6 +213,38 @@ public class CaliperApiController {
     return events;
   }
   
+  @RequestMapping(value = { "", "/" },
+      method = RequestMethod.GET, params = "cursor",
+      consumes = "application/json", produces = "application/json;charset=utf-8")
+  public CursorPage getWithCursorHandler(@RequestHeader(value="Authorization") String authorizationHeader,
+      @RequestParam(value = "cursor") String cursor,
+      @RequestParam(value = "limit", required = false, defaultValue = "1000") String limit)
+        throws JsonProcessingException, IOException, InvalidCaliperFormatException, InvalidRequestException {
+    CursorPage events = null;
+    String key = AuthorizationUtils.getKeyFromHeader(authorizationHeader);
+    
+    if (StringUtils.isNotBlank(key)) {
+      Tenant tenant = AuthorizationUtils.getTenant(key, keyManager);       
+
+      if (tenant != null) {
+        try {
+          // an empty cursor starts from the beginning of the tenant's events
+          events = reader.findByTenantId(String.valueOf(tenant.getId()), cursor, CursorPage.limit(limit, maxCursorLimit));
+        }
+        catch (IllegalArgumentException e) {
+          throw new InvalidRequestException(e.getMessage(), e);
+        }
+      }
+      else {
+        throw new NotFoundException("Tenant not found");
+      }
+    }
+    else {
+      throw new InvalidRequestException("Tenant Key is required");
+    }
+    return events;
+  }
+  
   @RequestMapping(value = { "/stats" },
       method = RequestMethod.GET,
       consumes = "application/json", produces = "application/json;charset=utf-8")
@@ -146,67 +255,16 @@ public class CaliperApiController {
     String key = AuthorizationUtils.getKeyFromHeader(authorizationHeader);
     
     if (StringUtils.isNotBlank(key)) {
-      Tenant tenant = keyManager.getTenantForKey(key);       
+      Tenant tenant = AuthorizationUtils.getTenant(key, keyManager);       
 
       if (tenant != null) {
-        
-        Page<Event> events = reader.findByTenantIdAndContext(String.valueOf(tenant.getId()), course, new PageRequest(0, 100000));
-        if (events != null) {
-          List<Event> content = events.getContent();
-          if (content != null) {
-            eventStats.setTotal(content.size());
-            
-            
-            //LocalDate startOfWeek = new LocalDate().weekOfWeekyear().roundFloorCopy();
-            Map<String,Long> totalByWeekNumber = content.stream().collect(
-            		Collectors.groupingBy(event -> ((Event)event).getEventTime().toLocalDate().weekOfWeekyear().roundFloorCopy().toString(), Collectors.counting())
-            );
-                                   
-            eventStats.setTotalByWeekNumber(totalByWeekNumber);
-            
-            Map<String, StudentEventStats> studentEventStats= new HashMap<String, StudentEventStats>();
-            
-            
-            Long maxValue = (long) 0;            
-            for(Event e: content){     
-            	
-            	StudentEventStats studentEventStat = (StudentEventStats)studentEventStats.get(e.getActor().getId());
-            	if(studentEventStat == null) {            	
-            		studentEventStat = new StudentEventStats();
-            		Map<String, Long> totalStudentByWeekNumber = new HashMap<String,Long>();
-            		studentEventStat.setTotalByWeekNumber(totalStudentByWeekNumber);
-            	}
-            	
-            	String firstDayOfEventWeek = e.getEventTime().toLocalDate().weekOfWeekyear().roundFloorCopy().toString();
-            	
-            	Map<String, Long> totalStudentByWeekNumber = studentEventStat.getTotalByWeekNumber();
-            	
-            	Long numberOfStudentEventsForWeek = totalStudentByWeekNumber.get(firstDayOfEventWeek);  
-            	if(numberOfStudentEventsForWeek == null) {
-            		//this is the first one
-            		totalStudentByWeekNumber.put(firstDayOfEventWeek, (long) 1);
-            	} else {
-            		//increment what we have
-            		totalStudentByWeekNumber.put(firstDayOfEventWeek, numberOfStudentEventsForWeek + 1);
-            	}          		            	
-            	
-            	long newTotal = studentEventStat.getTotal() + 1;
-            	
-            	studentEventStat.setStudentId(e.getActor().getId());
-            	studentEventStat.setStudentName(e.getActor().getName());
-            	studentEventStats.put(e.getActor().getId(), studentEventStat);
-            	studentEventStat.setTotal(newTotal);
-            	
-            	if(maxValue < newTotal) {
-            		maxValue = newTotal;
-            	}
-            }
-            
-            eventStats.setStudentActivityStats(studentEventStats);
-            eventStats.setMax(maxValue);
-          }
+        if (eventStatsAggregator != null) {
+          eventStats = eventStatsAggregator.getStats(String.valueOf(tenant.getId()), course);
+        }
+        else {
+          // counted by the store, only the buckets come back
+          eventStats = reader.findStatsByTenantIdAndContext(String.valueOf(tenant.getId()), course);
         }
-        
       }
       else {
         throw new NotFoundException("Tenant not found");
@@ -217,7 +275,30 @@ public class CaliperApiController {
     }
     return eventStats;
   }
-  
 
+  /**
+   * Recomputes the calling tenant's incremental stats from the stored
+   * events, for backfills and for events stored before
+   * openlrs.stats.incremental was turned on.
+   */
+  @RequestMapping(value = { "/stats/rebuild" }, method = RequestMethod.POST, produces = "application/json;charset=utf-8")
+  public Map<String, Long> rebuildStats(@RequestHeader(value="Authorization") String authorizationHeader)
+        throws InvalidRequestException {
+    if (eventStatsAggregator == null) {
+      throw new NotFoundException("Incremental stats are not enabled");
+    }
+
+    String key = AuthorizationUtils.getKeyFromHeader(authorizationHeader);
+    if (StringUtils.isBlank(key)) {
+      throw new InvalidRequestException("Tenant Key is required");
+    }
+
+    Tenant tenant = AuthorizationUtils.getTenant(key, keyManager);
+    if (tenant == null) {
+      throw new NotFoundException("Tenant not found");
+    }
+
+    return Collections.singletonMap("events", eventStatsAggregator.rebuild(String.valueOf(tenant.getId())));
+  }
 
 }
@@ -3,42 +3,62 @@
  */
 package org.apereo.openlrs.controllers.xapi;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apereo.openlrs.KeyManager;
 import org.apereo.openlrs.Tenant;
+import org.apereo.openlrs.exceptions.TooManyRequestsException;
 import org.apereo.openlrs.exceptions.xapi.InvalidXAPIRequestException;
+import org.apereo.openlrs.metrics.Metrics;
 import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.xapi.RawStatement;
 import org.apereo.openlrs.model.xapi.Statement;
 import org.apereo.openlrs.model.xapi.StatementResult;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQuery;
+import org.apereo.openlrs.storage.EventQueue;
 import org.apereo.openlrs.storage.Reader;
 import org.apereo.openlrs.storage.Writer;
 import org.apereo.openlrs.utils.AuthorizationUtils;
+import org.apereo.openlrs.utils.StatementUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import com.amazonaws.util.json.JSONArray;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.collect.Lists;
 import com.google.common.net.MediaType;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -59,60 +79,115 @@ public class XApiApiController {
   @Autowired private XApiToCaliperConversionService xapiToCaliperConversionService;
   @Autowired private Writer writer;
   @Autowired private Reader reader;
+  @Autowired(required=false) private EventQueue eventQueue;
   @Autowired KeyManager keyManager;
+  @Autowired private Metrics metrics;
+  
+  @Value("${openlrs.cursor.maxLimit:1000}")
+  private int maxCursorLimit;
+  
+  @Value("${openlrs.ingest.batchSize:500}")
+  private int chunkSize;
+  
+  @Value("${openlrs.rawStatements:false}")
+  private boolean rawStatements;
   
   @RequestMapping(value = { "", "/" }, 
       method = RequestMethod.POST, 
       consumes = "application/json", produces=org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
-  public String postStatement(@RequestBody String json, @RequestHeader(value="Authorization") String authorizationHeader)
+  public ResponseEntity<String> postStatement(HttpServletRequest request, @RequestHeader(value="Authorization") String authorizationHeader)
       throws InvalidXAPIRequestException {
     List<String> ids = null;
+    HttpStatus status = HttpStatus.OK;
     String key = AuthorizationUtils.getKeyFromHeader(authorizationHeader);
     
     if (StringUtils.isNotBlank(key)) {
-      Tenant tenant = keyManager.getTenantForKey(key);  
+      Tenant tenant = AuthorizationUtils.getTenant(key, keyManager);  
       if (tenant != null) { 
         try {
-          if (json != null && StringUtils.isNotBlank(json)) {
-            ids = new ArrayList<String>();
+          ids = new ArrayList<String>();
 
-            List<Statement> statements = null;
-            try {
-              statements = objectMapper.readValue(json,
-                  new TypeReference<List<Statement>>() {
-                  });
-            } catch (Exception e) {
-              throw new InvalidXAPIRequestException(e);
-            }
+          // statements are read one at a time from the body (a single
+          // statement or an array of them) and written in bounded chunks
+          // in raw mode each statement's tokens are kept to store alongside the event
+          MappingIterator<?> statements = null;
+          try {
+            statements = objectMapper.reader(rawStatements ? TokenBuffer.class : Statement.class).readValues(request.getInputStream());
+          } catch (Exception e) {
+            throw new InvalidXAPIRequestException(e);
+          }
 
-            for (Statement statement : statements) {
-              Set<ConstraintViolation<Statement>> violations = validator
-                  .validate(statement);
-              if (!violations.isEmpty()) {
-                StringBuilder msg = new StringBuilder();
-                for (ConstraintViolation<Statement> cv : violations) {
-                  msg.append(cv.getMessage() + ", ");
-                }
-                throw new InvalidXAPIRequestException(msg.toString());
-              }
-              logger.debug(
-                  "Statement POST request received with input statement: {}",
-                  statement);
-              Event event = xapiToCaliperConversionService.fromXapi(statement);
-              logger.debug("{}",event);
-              if (StringUtils.isBlank(event.getId())) {
-                event.setId(UUID.randomUUID().toString());
+          List<Event> events = new ArrayList<Event>();
+          Set<String> batchIds = new HashSet<String>();
+          List<String> clientIds = new ArrayList<String>();
+          long parseNanos = 0;
+          long convertNanos = 0;
+          int received = 0;
+          while (statements.hasNextValue()) {
+            long parseStart = System.nanoTime();
+            TokenBuffer raw = null;
+            Statement statement = null;
+            if (rawStatements) {
+              raw = (TokenBuffer) statements.nextValue();
+              statement = objectMapper.readValue(raw.asParser(objectMapper), Statement.class);
+            }
+            else {
+              statement = (Statement) statements.nextValue();
+            }
+            parseNanos += System.nanoTime() - parseStart;
+            received++;
+            Set<ConstraintViolation<Statement>> violations = validator
+                .validate(statement);
+            if (!violations.isEmpty()) {
+              StringBuilder msg = new StringBuilder();
+              for (ConstraintViolation<Statement> cv : violations) {
+                msg.append(cv.getMessage() + ", ");
               }
-              else {
-                Event existingEvent = reader.findByTenantIdAndEventId(String.valueOf(tenant.getId()), event.getId());
-                if (existingEvent != null) {
-                  throw new InvalidXAPIRequestException(String.format("Event with ID %s already exists", event.getId()));
-                }
+              throw new InvalidXAPIRequestException(msg.toString());
+            }
+            logger.debug(
+                "Statement POST request received with input statement: {}",
+                statement);
+            long convertStart = System.nanoTime();
+            Event event = xapiToCaliperConversionService.fromXapi(statement, String.valueOf(tenant.getId()));
+            convertNanos += System.nanoTime() - convertStart;
+            logger.debug("{}",event);
+            boolean assignedId = StringUtils.isBlank(event.getId());
+            if (assignedId) {
+              event.setId(UUID.randomUUID().toString());
+            }
+            else {
+              if (!batchIds.add(event.getId())) {
+                throw new InvalidXAPIRequestException(String.format("Event with ID %s already exists", event.getId()));
               }
-
-              ids.add(writer.save(event, String.valueOf(tenant.getId())).getId());
+              clientIds.add(event.getId());
+            }
+            if (raw != null) {
+              event = rawEvent(event, raw, assignedId);
             }
+            events.add(event);
+            
+            if (events.size() == chunkSize) {
+              rejectExisting(String.valueOf(tenant.getId()), clientIds);
+              status = store(events, String.valueOf(tenant.getId()), ids);
+              events = new ArrayList<Event>();
+              clientIds = new ArrayList<String>();
+            }
+          }
+
+          if (!events.isEmpty()) {
+            rejectExisting(String.valueOf(tenant.getId()), clientIds);
+            status = store(events, String.valueOf(tenant.getId()), ids);
           }
+          String tenantId = String.valueOf(tenant.getId());
+          metrics.recordTime("openlrs.ingest.parse", parseNanos, "endpoint", "xapi", "tenant", tenantId);
+          metrics.recordTime("openlrs.ingest.convert", convertNanos, "endpoint", "xapi", "tenant", tenantId);
+          metrics.recordValue("openlrs.ingest.request.size", received, "endpoint", "xapi", "tenant", tenantId);
+          if (ids.isEmpty()) {
+            throw new InvalidXAPIRequestException("No statements in request");
+          }
+        } catch (TooManyRequestsException e) {
+          throw e;
         } catch (Exception e) {
           logger.error(e.getMessage(), e);
           throw new InvalidXAPIRequestException(e.getMessage(), e);
@@ -129,20 +204,111 @@ public class XApiApiController {
     JsonArray arr=new JsonArray();
     JsonPrimitive idPrem=new JsonPrimitive(ids.get(0));
     arr.add(idPrem);
-  return arr.toString();		
+  return new ResponseEntity<String>(arr.toString(), status);		
+  }
+  
+  /**
+   * Client supplied ids are checked against the store once per chunk
+   * rather than once per statement.
+   */
+  private void rejectExisting(String tenantId, List<String> clientIds) throws InvalidXAPIRequestException {
+    if (clientIds.isEmpty()) {
+      return;
+    }
+    Set<String> existing = reader.findExistingEventIds(tenantId, clientIds);
+    if (existing != null && !existing.isEmpty()) {
+      throw new InvalidXAPIRequestException(String.format("Event with ID %s already exists", existing.iterator().next()));
+    }
+  }
+  
+  /**
+   * Keeps only what the readers filter and sort on, plus the statement as
+   * received. An id the LRS assigned is written first so the stored
+   * statement carries it.
+   */
+  private Event rawEvent(Event event, TokenBuffer raw, boolean assignedId) throws IOException {
+    StringWriter json = new StringWriter();
+    JsonGenerator generator = objectMapper.getFactory().createGenerator(json);
+    JsonParser parser = raw.asParser(objectMapper);
+    parser.nextToken();
+    generator.writeStartObject();
+    if (assignedId) {
+      generator.writeStringField("id", event.getId());
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      generator.copyCurrentStructure(parser);
+    }
+    generator.writeEndObject();
+    generator.close();
+
+    Event header = new Event(event.getId(), event.getContext(), event.getType(), event.getEventTime(), event.getStoredTime(),
+        event.getActor(), event.getAction(), event.getObject(), null, event.getGroup(), null);
+    header.setRawStatement(json.toString());
+    return header;
+  }
+  
+  /**
+   * Returns the stored statement when there is one and raw statements are
+   * on, otherwise maps the event back to a statement.
+   */
+  private Object toStatement(Event event, String tenantId) throws URISyntaxException {
+    if (rawStatements && event.getRawStatement() != null) {
+      return new RawStatement(event.getRawStatement());
+    }
+    return xapiToCaliperConversionService.toXapi(event, tenantId);
+  }
+  
+  /**
+   * A view of the events that converts each one as the response is
+   * written, so no list of statements is built up front.
+   */
+  private Iterable<Object> toStatements(List<Event> events, String tenantId) {
+    return Lists.transform(events, event -> {
+      try {
+        return toStatement(event, tenantId);
+      }
+      catch (URISyntaxException e) {
+        throw new IllegalArgumentException(e);
+      }
+    });
+  }
+  
+  /**
+   * Hands one chunk to the queue when async ingestion is on, otherwise to
+   * the writer, and collects the ids.
+   */
+  private HttpStatus store(List<Event> events, String tenantId, List<String> ids) {
+    if (eventQueue != null) {
+      eventQueue.enqueue(events, tenantId);
+      for (Event event : events) {
+        ids.add(event.getId());
+      }
+      return HttpStatus.ACCEPTED;
+    }
+    for (Event event : writer.saveAll(events, tenantId)) {
+      ids.add(event.getId());
+    }
+    return HttpStatus.OK;
   }
   
   @RequestMapping(method = RequestMethod.GET, produces = "application/json;charset=utf-8")
   public StatementResult getStatements(
       @RequestHeader(value="Authorization") String authorizationHeader,
       @RequestParam(value = "statementId", required = false) String statementId,
-      @RequestParam(value = "page", required = false, defaultValue = "0") String page,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "page", required = false) String page,
+      @RequestParam(value = "actor", required = false) String actor,
+      @RequestParam(value = "verb", required = false) String verb,
+      @RequestParam(value = "activity", required = false) String activity,
+      @RequestParam(value = "since", required = false) String since,
+      @RequestParam(value = "until", required = false) String until,
+      @RequestParam(value = "ascending", required = false) String ascending,
       @RequestParam(value = "limit", required = false, defaultValue = "1000") String limit) throws URISyntaxException {
     StatementResult statementResult = null;
     String key = AuthorizationUtils.getKeyFromHeader(authorizationHeader);
     
     if (StringUtils.isNotBlank(key)) {
-      Tenant tenant = keyManager.getTenantForKey(key);       
+      Tenant tenant = AuthorizationUtils.getTenant(key, keyManager);       
 
       if (tenant != null) {
         if (StringUtils.isNotBlank(statementId)) {
@@ -150,23 +316,52 @@ public class XApiApiController {
           if (event == null) {
             throw new InvalidXAPIRequestException(String.format("No statement with id %s",statementId));
           }
-          Statement statement = xapiToCaliperConversionService.toXapi(event);
-          statementResult = new StatementResult(Collections.singletonList(statement));
+          statementResult = new StatementResult(Collections.singletonList(toStatement(event, String.valueOf(tenant.getId()))));
         }
-        else {
+        else if (StringUtils.isNotBlank(actor) || StringUtils.isNotBlank(verb) || StringUtils.isNotBlank(activity)
+            || StringUtils.isNotBlank(since) || StringUtils.isNotBlank(until) || StringUtils.isNotBlank(ascending)) {
+          // filters go to the store as one query instead of being applied to pages here
+          Map<String, String> filterMap = StatementUtils.createStatementFilterMap(actor, verb, activity, since, until, limit, ascending);
+          EventQuery eventQuery = null;
+          try {
+            eventQuery = StatementUtils.toEventQuery(filterMap);
+          }
+          catch (IllegalArgumentException e) {
+            throw new InvalidXAPIRequestException(e.getMessage(), e);
+          }
+          
+          List<Event> events = reader.findByQuery(String.valueOf(tenant.getId()), eventQuery);
+          statementResult = new StatementResult(toStatements(events, String.valueOf(tenant.getId())));
+        }
+        else if (StringUtils.isNotBlank(page)) {
+          // legacy offset paging, kept for clients that still send page=N
           Page<Event> eventPage = reader.findByTenantId(String.valueOf(tenant.getId()), new PageRequest(Integer.valueOf(page), Integer.valueOf(limit)));
           if (eventPage != null && eventPage.hasContent()) {
             List<Event> events = eventPage.getContent();
             if (events != null && !events.isEmpty()) {
-              List<Statement> statements = new ArrayList<>();
-              for (Event e : events) {
-                statements.add(xapiToCaliperConversionService.toXapi(e));
-              }
-              
-              statementResult = new StatementResult(statements);
+              statementResult = new StatementResult(toStatements(events, String.valueOf(tenant.getId())));
             }
           }
         }
+        else {
+          CursorPage cursorPage = null;
+          try {
+            cursorPage = reader.findByTenantId(String.valueOf(tenant.getId()), cursor, CursorPage.limit(limit, maxCursorLimit));
+          }
+          catch (IllegalArgumentException e) {
+            throw new InvalidXAPIRequestException(e.getMessage(), e);
+          }
+          
+          List<Event> events = cursorPage.hasContent() ? cursorPage.getContent() : Collections.<Event>emptyList();
+          
+          String more = null;
+          if (cursorPage.getNext() != null) {
+            more = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", cursorPage.getNext())
+                .build().encode().toUriString();
+          }
+          statementResult = new StatementResult(toStatements(events, String.valueOf(tenant.getId())), more);
+        }
       }
       else {
         throw new InvalidXAPIRequestException(String.format("Unknown Tenant %s",key));
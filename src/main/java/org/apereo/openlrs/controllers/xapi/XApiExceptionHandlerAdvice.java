@@ -23,7 +23,10 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.apereo.openlrs.exceptions.InvalidRequestException;
 import org.apereo.openlrs.exceptions.NotFoundException;
+import org.apereo.openlrs.exceptions.TooManyRequestsException;
+import org.apereo.openlrs.exceptions.caliper.InvalidCaliperFormatException;
 import org.apereo.openlrs.exceptions.xapi.InvalidXAPIRequestException;
 import org.apereo.openlrs.exceptions.xapi.StatementStateConflictException;
 import org.apereo.openlrs.model.xapi.XApiErrorInfo;
@@ -86,6 +89,26 @@ public class XApiExceptionHandlerAdvice {
         return result;
     }
 
+    @ExceptionHandler(InvalidRequestException.class)
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    @ResponseBody
+    public XApiErrorInfo handleInvalidRequestException(final HttpServletRequest request, final InvalidRequestException e) {
+        final XApiErrorInfo result = new XApiErrorInfo(HttpStatus.BAD_REQUEST, request, e.getLocalizedMessage());
+        this.logException(e);
+        this.logError(result);
+        return result;
+    }
+
+    @ExceptionHandler(InvalidCaliperFormatException.class)
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    @ResponseBody
+    public XApiErrorInfo handleInvalidCaliperFormatException(final HttpServletRequest request, final InvalidCaliperFormatException e) {
+        final XApiErrorInfo result = new XApiErrorInfo(HttpStatus.BAD_REQUEST, request, e.getLocalizedMessage());
+        this.logException(e);
+        this.logError(result);
+        return result;
+    }
+
     @ExceptionHandler(StatementStateConflictException.class)
     @ResponseStatus(value = HttpStatus.CONFLICT)
     @ResponseBody
@@ -96,6 +119,16 @@ public class XApiExceptionHandlerAdvice {
         return result;
     }
 
+    @ExceptionHandler(TooManyRequestsException.class)
+    @ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS)
+    @ResponseBody
+    public XApiErrorInfo handleTooManyRequestsException(final HttpServletRequest request, final TooManyRequestsException e) {
+        final XApiErrorInfo result = new XApiErrorInfo(HttpStatus.TOO_MANY_REQUESTS, request, e.getLocalizedMessage());
+        this.logException(e);
+        this.logError(result);
+        return result;
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(value = HttpStatus.BAD_REQUEST)
     @ResponseBody
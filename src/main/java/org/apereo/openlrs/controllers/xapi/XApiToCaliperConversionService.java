@@ -10,12 +10,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
-import javax.annotation.PostConstruct;
-
-import org.apache.commons.collections4.BidiMap;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.bidimap.DualHashBidiMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apereo.openlrs.model.event.Actor;
 import org.apereo.openlrs.model.event.Event;
@@ -33,10 +32,9 @@ import org.apereo.openlrs.model.xapi.XApiObject;
 import org.apereo.openlrs.model.xapi.XApiObjectDefinition;
 import org.apereo.openlrs.model.xapi.XApiResult;
 import org.apereo.openlrs.model.xapi.XApiVerb;
+import org.apereo.openlrs.utils.TimestampUtils;
 import org.imsglobal.caliper.actions.Action;
 import org.imsglobal.caliper.context.Context;
-import org.imsglobal.caliper.entities.DigitalResourceType;
-import org.imsglobal.caliper.entities.EntityType;
 import org.imsglobal.caliper.entities.Type;
 import org.imsglobal.caliper.events.EventType;
 import org.joda.time.DateTime;
@@ -52,158 +50,45 @@ import org.springframework.stereotype.Component;
 @Component
 public class XApiToCaliperConversionService {
   
-  private BidiMap<Action, String> verbActionMap;
-  private BidiMap<Type, String> objectEntityMap;
-  private Map<Action, EventType> actionEventMap;
+  private static final DateTimeFormatter TIMESTAMP_FORMAT = ISODateTimeFormat.dateTime();
+  private static final int MAX_CACHED_URIS = 10000;
   
-  @PostConstruct
-  private void init() {
-    verbActionMap = new DualHashBidiMap<Action, String>();
-    verbActionMap.put(Action.ABANDONED, "https://w3id.org/xapi/adl/verbs/abandoned");
-    //verbActionMap.put(Action.ACTIVATED, );
-    verbActionMap.put(Action.ATTACHED, "http://activitystrea.ms/schema/1.0/attach");    
-    verbActionMap.put(Action.BOOKMARKED, "http://id.tincanapi.com/verb/bookmarked");
-    //verbActionMap.put(Action.CHANGED_RESOLUTION, );
-    //verbActionMap.put(Action.CHANGED_SIZE, );
-    //verbActionMap.put(Action.CHANGED_VOLUME, );
-    //verbActionMap.put(Action.CLASSIFIED, );
-    //verbActionMap.put(Action.CLOSED_POPOUT, );
-    verbActionMap.put(Action.COMMENTED, "http://adlnet.gov/expapi/verbs/commented");
-    verbActionMap.put(Action.COMPLETED, "http://adlnet.gov/expapi/verbs/completed");
-    //verbActionMap.put(Action.DEACTIVATED, );
-    //verbActionMap.put(Action.DESCRIBED, );
-    verbActionMap.put(Action.DISLIKED, "http://activitystrea.ms/schema/1.0/dislike");
-    //verbActionMap.put(Action.DISABLED_CLOSED_CAPTIONING, );
-    //verbActionMap.put(Action.ENABLED_CLOSED_CAPTIONING, );
-    //verbActionMap.put(Action.ENDED, );
-    //verbActionMap.put(Action.ENTERED_FULLSCREEN, );
-    //verbActionMap.put(Action.EXITED_FULLSCREEN, );
-    //verbActionMap.put(Action.FORWARDED_TO, );
-    verbActionMap.put(Action.GRADED, "http://adlnet.gov/expapi/verbs/scored");
-    //verbActionMap.put(Action.HID, );
-    //verbActionMap.put(Action.HIGHLIGHTED, );
-    //verbActionMap.put(Action.JUMPED_TO, );
-    //verbActionMap.put(Action.IDENTIFIED, );
-    verbActionMap.put(Action.LIKED, "http://activitystrea.ms/schema/1.0/like");
-    //verbActionMap.put(Action.LINKED, );
-    
-    // alternatives
-    // https://w3id.org/xapi/adl/verbs/logged-in
-    // https://w3id.org/xapi/adl/verbs/logged-out
-    
-    verbActionMap.put(Action.LOGGED_IN, "https://brindlewaye.com/xAPITerms/verbs/loggedin/");
-    verbActionMap.put(Action.LOGGED_OUT, "https://brindlewaye.com/xAPITerms/verbs/loggedout/");
-    
-    //verbActionMap.put(Action.MUTED, );
-    //verbActionMap.put(Action.NAVIGATED_TO, );
-    //verbActionMap.put(Action.OPENED_POPOUT, );
-    verbActionMap.put(Action.PAUSED, "http://id.tincanapi.com/verb/paused");
-    //verbActionMap.put(Action.RANKED, );
-    verbActionMap.put(Action.QUESTIONED, "http://adlnet.gov/expapi/verbs/asked");
-    //verbActionMap.put(Action.RECOMMENDED, );
-    verbActionMap.put(Action.REPLIED, "http://adlnet.gov/expapi/verbs/responded");
-    //verbActionMap.put(Action.RESTARTED, );
-    verbActionMap.put(Action.RESUMED, "http://adlnet.gov/expapi/verbs/resumed");
-    verbActionMap.put(Action.REVIEWED, "http://id.tincanapi.com/verb/reviewed");
-    //verbActionMap.put(Action.REWOUND, );
-    verbActionMap.put(Action.SEARCHED, "http://activitystrea.ms/schema/1.0/search");
-    verbActionMap.put(Action.SHARED, "http://activitystrea.ms/schema/1.0/share");
-    //verbActionMap.put(Action.SHOWED, );
-    verbActionMap.put(Action.SKIPPED, "http://id.tincanapi.com/verb/skipped");
-    verbActionMap.put(Action.STARTED, "http://activitystrea.ms/schema/1.0/start");
-    verbActionMap.put(Action.SUBMITTED, "http://activitystrea.ms/schema/1.0/submit");
-    //verbActionMap.put(Action.SUBSCRIBED, );
-    verbActionMap.put(Action.TAGGED, "http://activitystrea.ms/schema/1.0/tag");
-    //verbActionMap.put(Action.TIMED_OUT, );
-    verbActionMap.put(Action.VIEWED, "http://id.tincanapi.com/verb/viewed");
-    //verbActionMap.put(Action.UNMUTED, );
-    
-    objectEntityMap = new DualHashBidiMap<Type, String>();
-    // TODO support other xapi annotation types
-    objectEntityMap.put(EntityType.ANNOTATION, "http://risc-inc.com/annotator/activities/highlight");
-    //objectEntityMap.put(EntityType.ATTEMPT, arg1);
-    //objectEntityMap.put(EntityType.COURSE_OFFERING, arg1);
-    objectEntityMap.put(EntityType.COURSE_SECTION, "http://adlnet.gov/expapi/activities/course");
-    objectEntityMap.put(EntityType.DIGITAL_RESOURCE, "http://adlnet.gov/expapi/activities/media");
-    //objectEntityMap.put(EntityType.ENTITY, );
-    objectEntityMap.put(EntityType.GROUP, "http://activitystrea.ms/schema/1.0/group");
-    objectEntityMap.put(EntityType.LEARNING_OBJECTIVE, "http://adlnet.gov/expapi/activities/objective");
-    //objectEntityMap.put(EntityType.MEMBERSHIP, arg1);
-    objectEntityMap.put(EntityType.PERSON, "http://activitystrea.ms/schema/1.0/person");
-    objectEntityMap.put(EntityType.ORGANIZATION, "http://activitystrea.ms/schema/1.0/organization");
-    //objectEntityMap.put(EntityType.RESPONSE, arg1);
-    //objectEntityMap.put(EntityType.RESULT, arg1);
-    //objectEntityMap.put(EntityType.SESSION, arg1);
-    objectEntityMap.put(EntityType.SOFTWARE_APPLICATION, "http://activitystrea.ms/schema/1.0/application");
-    //objectEntityMap.put(EntityType.VIEW, arg1);
-    //objectEntityMap.put(DigitalResourceType.MEDIA_LOCATION, arg1);
-    objectEntityMap.put(DigitalResourceType.MEDIA_OBJECT, "http://adlnet.gov/expapi/activities/media");
-    //objectEntityMap.put(DigitalResourceType.READING, arg1);
-    objectEntityMap.put(DigitalResourceType.WEB_PAGE, "http://activitystrea.ms/schema/1.0/page");
-    
-    actionEventMap = new HashMap<Action,EventType>();
-    actionEventMap.put(Action.ABANDONED, EventType.ASSIGNABLE);
-    actionEventMap.put(Action.ACTIVATED, EventType.ASSIGNABLE);
-    actionEventMap.put(Action.ATTACHED, EventType.ANNOTATION);    
-    actionEventMap.put(Action.BOOKMARKED, EventType.ANNOTATION);
-    actionEventMap.put(Action.CHANGED_RESOLUTION, EventType.MEDIA);
-    actionEventMap.put(Action.CHANGED_SIZE, EventType.MEDIA);
-    actionEventMap.put(Action.CHANGED_VOLUME, EventType.MEDIA);
-    actionEventMap.put(Action.CLASSIFIED, EventType.ANNOTATION);
-    actionEventMap.put(Action.CLOSED_POPOUT, EventType.MEDIA);
-    actionEventMap.put(Action.COMMENTED, EventType.ANNOTATION);
-    actionEventMap.put(Action.COMPLETED, EventType.ASSIGNABLE);
-    actionEventMap.put(Action.DEACTIVATED, EventType.ASSIGNABLE);
-    actionEventMap.put(Action.DESCRIBED, EventType.ANNOTATION);
-    actionEventMap.put(Action.DISLIKED, EventType.ANNOTATION);
-    actionEventMap.put(Action.DISABLED_CLOSED_CAPTIONING, EventType.MEDIA);
-    actionEventMap.put(Action.ENABLED_CLOSED_CAPTIONING, EventType.MEDIA);
-    actionEventMap.put(Action.ENDED, EventType.MEDIA);
-    actionEventMap.put(Action.ENTERED_FULLSCREEN, EventType.MEDIA);
-    actionEventMap.put(Action.EXITED_FULLSCREEN, EventType.MEDIA);
-    actionEventMap.put(Action.FORWARDED_TO, EventType.MEDIA);
-    actionEventMap.put(Action.GRADED, EventType.OUTCOME);
-    actionEventMap.put(Action.HID, EventType.ASSIGNABLE);
-    actionEventMap.put(Action.HIGHLIGHTED, EventType.ANNOTATION);
-    actionEventMap.put(Action.JUMPED_TO, EventType.MEDIA);
-    actionEventMap.put(Action.IDENTIFIED, EventType.ANNOTATION);
-    actionEventMap.put(Action.LIKED, EventType.ANNOTATION);
-    actionEventMap.put(Action.LINKED, EventType.ANNOTATION);
-    actionEventMap.put(Action.LOGGED_IN, EventType.SESSION);
-    actionEventMap.put(Action.LOGGED_OUT, EventType.SESSION);   
-    actionEventMap.put(Action.MUTED, EventType.MEDIA);
-    actionEventMap.put(Action.NAVIGATED_TO, EventType.NAVIGATION);
-    actionEventMap.put(Action.OPENED_POPOUT, EventType.MEDIA);
-    actionEventMap.put(Action.PAUSED, EventType.MEDIA);
-    actionEventMap.put(Action.RANKED, EventType.ANNOTATION);
-    actionEventMap.put(Action.QUESTIONED, EventType.ANNOTATION);
-    actionEventMap.put(Action.RECOMMENDED, EventType.ANNOTATION);
-    actionEventMap.put(Action.REPLIED, EventType.ANNOTATION);
-    actionEventMap.put(Action.RESTARTED, EventType.ASSESSMENT);
-    actionEventMap.put(Action.RESUMED, EventType.MEDIA);
-    actionEventMap.put(Action.REVIEWED, EventType.ASSIGNABLE);
-    actionEventMap.put(Action.REWOUND, EventType.MEDIA);
-    actionEventMap.put(Action.SEARCHED, EventType.READING);
-    actionEventMap.put(Action.SHARED, EventType.ANNOTATION);
-    actionEventMap.put(Action.SHOWED, EventType.ASSIGNABLE);
-    actionEventMap.put(Action.SKIPPED, EventType.ASSESSMENT_ITEM);
-    actionEventMap.put(Action.STARTED, EventType.EVENT);
-    actionEventMap.put(Action.SUBMITTED, EventType.EVENT);
-    actionEventMap.put(Action.SUBSCRIBED, EventType.ANNOTATION);
-    actionEventMap.put(Action.TAGGED, EventType.ANNOTATION);
-    actionEventMap.put(Action.TIMED_OUT, EventType.SESSION);
-    actionEventMap.put(Action.VIEWED, EventType.EVENT);
-    actionEventMap.put(Action.UNMUTED, EventType.MEDIA);
-
+  /** tenants that registered their own mappings, on top of the defaults */
+  private final ConcurrentMap<String, XApiVocabulary> tenantVocabularies = new ConcurrentHashMap<String, XApiVocabulary>();
+  /** extension keys repeat across statements, so their parsed URIs are kept */
+  private final ConcurrentMap<String, URI> uris = new ConcurrentHashMap<String, URI>();
+  
+  /**
+   * Maps an xAPI verb to a Caliper action for one tenant's statements.
+   */
+  public void registerVerb(String tenantId, String verbId, Action action) {
+    tenantVocabularies.compute(tenantId, (tenant, vocabulary) -> (vocabulary == null ? XApiVocabulary.DEFAULT : vocabulary).withVerb(verbId, action));
+  }
+  
+  /**
+   * Maps an xAPI activity type to a Caliper entity type for one tenant's statements.
+   */
+  public void registerObjectType(String tenantId, String xapiType, Type caliperType) {
+    tenantVocabularies.compute(tenantId, (tenant, vocabulary) -> (vocabulary == null ? XApiVocabulary.DEFAULT : vocabulary).withObjectType(xapiType, caliperType));
+  }
+  
+  private XApiVocabulary vocabulary(String tenantId) {
+    XApiVocabulary vocabulary = tenantId == null ? null : tenantVocabularies.get(tenantId);
+    return vocabulary == null ? XApiVocabulary.DEFAULT : vocabulary;
   }
 
   public Event fromXapi(Statement statement) {
+    return fromXapi(statement, null);
+  }
+
+  public Event fromXapi(Statement statement, String tenantId) {
+    XApiVocabulary vocabulary = vocabulary(tenantId);
     
     // EVENT TIME
     DateTime eventTime = null;    
     String timestamp = statement.getTimestamp(); 
     if (StringUtils.isNotBlank(timestamp)) {
-      eventTime = new DateTime(timestamp);
+      eventTime = TimestampUtils.parseDateTime(timestamp);
     }
     else {
       eventTime = new DateTime(DateTimeZone.UTC);
@@ -217,7 +102,7 @@ public class XApiToCaliperConversionService {
       
       String actorId = null;
       String actorType = null; 
-      Map<String, String> actorExtensions = new HashMap<>();
+      Map<String, String> actorExtensions = Collections.emptyMap();
       String actorName = xapiActor.getName();
       
       String openId = xapiActor.getOpenid();
@@ -240,7 +125,7 @@ public class XApiToCaliperConversionService {
           
           if (StringUtils.isNotBlank(accountName)) {
             actorId = accountName;
-            actorExtensions.put("HOMEPAGE", homePage);
+            actorExtensions = Collections.singletonMap("HOMEPAGE", homePage);
           }
           else {
             actorId = homePage;
@@ -275,7 +160,7 @@ public class XApiToCaliperConversionService {
         }
       }
       
-      caliperResult = new Result(UUID.randomUUID().toString(),
+      caliperResult = new Result(randomId(),
           Context.CONTEXT.getValue(),
           "http://purl.imsglobal.org/caliper/v1/Result",
           null,
@@ -312,7 +197,7 @@ public class XApiToCaliperConversionService {
       if (xapiObjectDefinition != null) {
         String xapiObjectDefinitionType = xapiObjectDefinition.getType();
         if (StringUtils.isNotBlank(xapiObjectDefinitionType)) {
-          objectType = xapiObjectTypeToCaliperEntityType(xapiObjectDefinitionType);
+          objectType = vocabulary.caliperType(xapiObjectDefinitionType);
         }
         
         Map<String,String> names = xapiObjectDefinition.getName();
@@ -340,8 +225,8 @@ public class XApiToCaliperConversionService {
         Map<URI,java.lang.Object> extensions = xapiObjectDefinition.getExtensions();
         if (extensions != null && !extensions.isEmpty()) {
           objectExtensions = new HashMap<String,String>(extensions.size());
-          for (URI key : extensions.keySet()) {
-            objectExtensions.put(key.toString(), extensions.get(key).toString());
+          for (Map.Entry<URI,java.lang.Object> entry : extensions.entrySet()) {
+            objectExtensions.put(entry.getKey().toString(), entry.getValue().toString());
           }
         }
       }
@@ -362,8 +247,8 @@ public class XApiToCaliperConversionService {
       Map<URI,java.lang.Object> extensions = xapiContext.getExtensions();
       if (extensions != null && !extensions.isEmpty()) {
         contextExtensions = new HashMap<String,String>(extensions.size());
-        for (URI key : extensions.keySet()) {
-          contextExtensions.put(key.toString(), extensions.get(key).toString());
+        for (Map.Entry<URI,java.lang.Object> entry : extensions.entrySet()) {
+          contextExtensions.put(entry.getKey().toString(), entry.getValue().toString());
         }
       }
 
@@ -507,7 +392,7 @@ public class XApiToCaliperConversionService {
     
     return new Event(statement.getId(),
         Context.CONTEXT.getValue(), 
-        xapiToCaliperType(statement), 
+        xapiToCaliperType(statement, vocabulary), 
         eventTime, 
         new DateTime(DateTimeZone.UTC),
         caliperActor, 
@@ -519,6 +404,11 @@ public class XApiToCaliperConversionService {
   }
   
   public Statement toXapi(Event event) throws URISyntaxException {
+    return toXapi(event, null);
+  }
+  
+  public Statement toXapi(Event event, String tenantId) throws URISyntaxException {
+    XApiVocabulary vocabulary = vocabulary(tenantId);
     Statement statement = new Statement();
     
     // ID
@@ -528,8 +418,7 @@ public class XApiToCaliperConversionService {
     // EVENT TIME
     DateTime eventTime = event.getEventTime();    
     if (eventTime != null) {
-      DateTimeFormatter fmt = ISODateTimeFormat.dateTime();
-      statement.setTimestamp(fmt.print(eventTime));
+      statement.setTimestamp(TIMESTAMP_FORMAT.print(eventTime));
     }
     // END EVENT TIME
     
@@ -573,9 +462,9 @@ public class XApiToCaliperConversionService {
       
       Map<URI,java.lang.Object> xapiResultExtensions = null;
       if (caliperResultExtensions != null && !caliperResultExtensions.isEmpty()) {
-        xapiResultExtensions = new HashMap<>();
+        xapiResultExtensions = new HashMap<>(caliperResultExtensions.size() * 2);
         for (Map.Entry<String,String> entry : caliperResultExtensions.entrySet()) {
-          xapiResultExtensions.put(new URI(entry.getKey()), entry.getValue());
+          xapiResultExtensions.put(uri(entry.getKey()), entry.getValue());
         }
         
         XApiResult xapiResult = new XApiResult();
@@ -612,13 +501,13 @@ public class XApiToCaliperConversionService {
         xapiObjectDefinition.setDescription(Collections.singletonMap("en", description));
       }
       
-      xapiObjectDefinition.setType(caliperEntityTypeToXapiObjectType(object.getType()));
+      xapiObjectDefinition.setType(vocabulary.xapiType(object.getType()));
       
       Map<String,String> extensions = object.getExtensions();
       if (extensions != null && !extensions.isEmpty()) {
-        Map<URI, java.lang.Object> xapiExtensions = new HashMap<>();
-        for (String key : extensions.keySet()) {
-          xapiExtensions.put(new URI(key), extensions.get(key));
+        Map<URI, java.lang.Object> xapiExtensions = new HashMap<>(extensions.size() * 2);
+        for (Map.Entry<String,String> entry : extensions.entrySet()) {
+          xapiExtensions.put(uri(entry.getKey()), entry.getValue());
         }
         xapiObjectDefinition.setExtensions(xapiExtensions);
       }
@@ -635,9 +524,9 @@ public class XApiToCaliperConversionService {
       
       Map<String,String> contextExtensions = group.getExtensions();
       if (contextExtensions != null && !contextExtensions.isEmpty()) {
-        Map<URI,java.lang.Object> extensions = new HashMap<>();
-        for (String key : contextExtensions.keySet()) {
-          extensions.put(new URI(key), extensions.get(key));
+        Map<URI,java.lang.Object> extensions = new HashMap<>(contextExtensions.size() * 2);
+        for (Map.Entry<String,String> entry : contextExtensions.entrySet()) {
+          extensions.put(uri(entry.getKey()), entry.getValue());
         }
         xapiContext.setExtensions(extensions);
       }
@@ -655,69 +544,33 @@ public class XApiToCaliperConversionService {
     return statement;
   }
   
-  private String xApiVerbToCaliperAction(String xapiVerbId) {
-    Action caliperAction = verbActionMap.getKey(xapiVerbId);
-    if (caliperAction == null) {
-      return xapiVerbId;
-    }
-    
-    return caliperAction.getValue();
+  private String xapiToCaliperType(Statement statement, XApiVocabulary vocabulary) {
+    // default to event, change if there is something more specific
+    XApiVerb xapiVerb = statement.getVerb();
+    String type = xapiVerb == null ? null : vocabulary.eventType(xapiVerb.getId());
+    return type == null ? EventType.EVENT.getValue() : type;
   }
   
-  private String caliperActionToXapiVerb(String caliperAction) {
-    String verb = null;
-    try {
-      verb = verbActionMap.get(Action.valueOf(caliperAction));
-      if (StringUtils.isBlank(verb)) {
-        return DEFAULT_XAPI_VERB;
+  private URI uri(String key) throws URISyntaxException {
+    URI uri = uris.get(key);
+    if (uri == null) {
+      uri = new URI(key);
+      if (uris.size() < MAX_CACHED_URIS) {
+        uris.putIfAbsent(key, uri);
       }
-
-    }
-    catch (IllegalArgumentException e) {
-      return DEFAULT_XAPI_VERB;
-    }
-    
-    return verb;
-  }
-  
-  private String xapiObjectTypeToCaliperEntityType(String xapiType) {
-    Type caliperType = objectEntityMap.getKey(xapiType);
-    if (caliperType == null) {
-      return xapiType;
-    }
-    
-    return caliperType.getValue();
-  }
-  
-  private String caliperEntityTypeToXapiObjectType(String caliperType) {
-    String xapiType = objectEntityMap.get(caliperType);
-    if (StringUtils.isBlank(xapiType)) {
-      return caliperType;
     }
-    
-    return xapiType;
+    return uri;
   }
   
-  private String xapiToCaliperType(Statement statement) {
-    // default to event
-    String type = EventType.EVENT.getValue();
-    // change if there is something more specific
-    XApiVerb xapiVerb = statement.getVerb();
-    if (xapiVerb != null) {
-      String verbId = xapiVerb.getId();
-      Action caliperAction = verbActionMap.getKey(verbId);
-      EventType eventType = actionEventMap.get(caliperAction);
-      if (eventType != null) {
-        type = eventType.getValue();
-      }
-    }
-    
-    return type;
+  /** result ids only need to be unique, so skip SecureRandom */
+  private static String randomId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+    long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+    return new UUID(mostSigBits, leastSigBits).toString();
   }
   
   private static final String ACTOR_TYPE_MBOX = "foaf:mbox";
   private static final String ACTOR_TYPE_OPENID = "http://openid.net/";
   private static final String ACTOR_TYPE_ACCOUNT = "https://github.com/adlnet/xAPI-Spec/blob/master/xAPI.md#agentaccount";
-  
-  private static final String DEFAULT_XAPI_VERB = "http://adlnet.gov/expapi/verbs/experienced";
 }
@@ -0,0 +1,185 @@
+/**
+ * 
+ */
+package org.apereo.openlrs.controllers.xapi;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.imsglobal.caliper.actions.Action;
+import org.imsglobal.caliper.entities.DigitalResourceType;
+import org.imsglobal.caliper.entities.EntityType;
+import org.imsglobal.caliper.entities.Type;
+import org.imsglobal.caliper.events.EventType;
+
+/**
+ * The verb and activity type tables used to convert between xAPI and
+ * Caliper, keyed by the strings that arrive in statements and events so a
+ * conversion is a single hash lookup. A vocabulary never changes once
+ * built; adding a mapping returns a new one, so readers need no locks.
+ */
+final class XApiVocabulary {
+
+  private static final Map<Action, EventType> ACTION_EVENT_TYPES = new EnumMap<Action, EventType>(Action.class);
+
+  static {
+    ACTION_EVENT_TYPES.put(Action.ABANDONED, EventType.ASSIGNABLE);
+    ACTION_EVENT_TYPES.put(Action.ACTIVATED, EventType.ASSIGNABLE);
+    ACTION_EVENT_TYPES.put(Action.ATTACHED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.BOOKMARKED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.CHANGED_RESOLUTION, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.CHANGED_SIZE, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.CHANGED_VOLUME, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.CLASSIFIED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.CLOSED_POPOUT, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.COMMENTED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.COMPLETED, EventType.ASSIGNABLE);
+    ACTION_EVENT_TYPES.put(Action.DEACTIVATED, EventType.ASSIGNABLE);
+    ACTION_EVENT_TYPES.put(Action.DESCRIBED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.DISLIKED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.DISABLED_CLOSED_CAPTIONING, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.ENABLED_CLOSED_CAPTIONING, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.ENDED, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.ENTERED_FULLSCREEN, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.EXITED_FULLSCREEN, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.FORWARDED_TO, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.GRADED, EventType.OUTCOME);
+    ACTION_EVENT_TYPES.put(Action.HID, EventType.ASSIGNABLE);
+    ACTION_EVENT_TYPES.put(Action.HIGHLIGHTED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.JUMPED_TO, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.IDENTIFIED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.LIKED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.LINKED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.LOGGED_IN, EventType.SESSION);
+    ACTION_EVENT_TYPES.put(Action.LOGGED_OUT, EventType.SESSION);
+    ACTION_EVENT_TYPES.put(Action.MUTED, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.NAVIGATED_TO, EventType.NAVIGATION);
+    ACTION_EVENT_TYPES.put(Action.OPENED_POPOUT, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.PAUSED, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.RANKED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.QUESTIONED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.RECOMMENDED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.REPLIED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.RESTARTED, EventType.ASSESSMENT);
+    ACTION_EVENT_TYPES.put(Action.RESUMED, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.REVIEWED, EventType.ASSIGNABLE);
+    ACTION_EVENT_TYPES.put(Action.REWOUND, EventType.MEDIA);
+    ACTION_EVENT_TYPES.put(Action.SEARCHED, EventType.READING);
+    ACTION_EVENT_TYPES.put(Action.SHARED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.SHOWED, EventType.ASSIGNABLE);
+    ACTION_EVENT_TYPES.put(Action.SKIPPED, EventType.ASSESSMENT_ITEM);
+    ACTION_EVENT_TYPES.put(Action.STARTED, EventType.EVENT);
+    ACTION_EVENT_TYPES.put(Action.SUBMITTED, EventType.EVENT);
+    ACTION_EVENT_TYPES.put(Action.SUBSCRIBED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.TAGGED, EventType.ANNOTATION);
+    ACTION_EVENT_TYPES.put(Action.TIMED_OUT, EventType.SESSION);
+    ACTION_EVENT_TYPES.put(Action.VIEWED, EventType.EVENT);
+    ACTION_EVENT_TYPES.put(Action.UNMUTED, EventType.MEDIA);
+  }
+
+  static final XApiVocabulary DEFAULT = new XApiVocabulary(
+      Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap())
+    .withVerb("https://w3id.org/xapi/adl/verbs/abandoned", Action.ABANDONED)
+    .withVerb("http://activitystrea.ms/schema/1.0/attach", Action.ATTACHED)
+    .withVerb("http://id.tincanapi.com/verb/bookmarked", Action.BOOKMARKED)
+    .withVerb("http://adlnet.gov/expapi/verbs/commented", Action.COMMENTED)
+    .withVerb("http://adlnet.gov/expapi/verbs/completed", Action.COMPLETED)
+    .withVerb("http://activitystrea.ms/schema/1.0/dislike", Action.DISLIKED)
+    .withVerb("http://adlnet.gov/expapi/verbs/scored", Action.GRADED)
+    .withVerb("http://activitystrea.ms/schema/1.0/like", Action.LIKED)
+    // alternatives
+    // https://w3id.org/xapi/adl/verbs/logged-in
+    // https://w3id.org/xapi/adl/verbs/logged-out
+    .withVerb("https://brindlewaye.com/xAPITerms/verbs/loggedin/", Action.LOGGED_IN)
+    .withVerb("https://brindlewaye.com/xAPITerms/verbs/loggedout/", Action.LOGGED_OUT)
+    .withVerb("http://id.tincanapi.com/verb/paused", Action.PAUSED)
+    .withVerb("http://adlnet.gov/expapi/verbs/asked", Action.QUESTIONED)
+    .withVerb("http://adlnet.gov/expapi/verbs/responded", Action.REPLIED)
+    .withVerb("http://adlnet.gov/expapi/verbs/resumed", Action.RESUMED)
+    .withVerb("http://id.tincanapi.com/verb/reviewed", Action.REVIEWED)
+    .withVerb("http://activitystrea.ms/schema/1.0/search", Action.SEARCHED)
+    .withVerb("http://activitystrea.ms/schema/1.0/share", Action.SHARED)
+    .withVerb("http://id.tincanapi.com/verb/skipped", Action.SKIPPED)
+    .withVerb("http://activitystrea.ms/schema/1.0/start", Action.STARTED)
+    .withVerb("http://activitystrea.ms/schema/1.0/submit", Action.SUBMITTED)
+    .withVerb("http://activitystrea.ms/schema/1.0/tag", Action.TAGGED)
+    .withVerb("http://id.tincanapi.com/verb/viewed", Action.VIEWED)
+    // TODO support other xapi annotation types
+    .withObjectType("http://risc-inc.com/annotator/activities/highlight", EntityType.ANNOTATION)
+    .withObjectType("http://adlnet.gov/expapi/activities/course", EntityType.COURSE_SECTION)
+    .withObjectType("http://activitystrea.ms/schema/1.0/group", EntityType.GROUP)
+    .withObjectType("http://adlnet.gov/expapi/activities/objective", EntityType.LEARNING_OBJECTIVE)
+    .withObjectType("http://activitystrea.ms/schema/1.0/person", EntityType.PERSON)
+    .withObjectType("http://activitystrea.ms/schema/1.0/organization", EntityType.ORGANIZATION)
+    .withObjectType("http://activitystrea.ms/schema/1.0/application", EntityType.SOFTWARE_APPLICATION)
+    // media maps to the more specific MediaObject rather than DigitalResource
+    .withObjectType("http://adlnet.gov/expapi/activities/media", DigitalResourceType.MEDIA_OBJECT)
+    .withObjectType("http://activitystrea.ms/schema/1.0/page", DigitalResourceType.WEB_PAGE);
+
+  /** xAPI verb id to Caliper event type */
+  private final Map<String, String> verbEventTypes;
+  /** xAPI activity type to Caliper entity type, and back */
+  private final Map<String, String> caliperTypes;
+  private final Map<String, String> xapiTypes;
+
+  private XApiVocabulary(Map<String, String> verbEventTypes, Map<String, String> caliperTypes, Map<String, String> xapiTypes) {
+    this.verbEventTypes = verbEventTypes;
+    this.caliperTypes = caliperTypes;
+    this.xapiTypes = xapiTypes;
+  }
+
+  /**
+   * @return the Caliper event type for the verb, or null if it has none
+   */
+  String eventType(String verbId) {
+    return verbId == null ? null : verbEventTypes.get(verbId);
+  }
+
+  /**
+   * @return the Caliper entity type, or xapiType itself when it is not mapped
+   */
+  String caliperType(String xapiType) {
+    String caliperType = xapiType == null ? null : caliperTypes.get(xapiType);
+    return caliperType == null ? xapiType : caliperType;
+  }
+
+  /**
+   * @return the xAPI activity type, or caliperType itself when it is not mapped
+   */
+  String xapiType(String caliperType) {
+    String xapiType = caliperType == null ? null : xapiTypes.get(caliperType);
+    return xapiType == null ? caliperType : xapiType;
+  }
+
+  XApiVocabulary withVerb(String verbId, Action action) {
+    Map<String, String> verbs = new HashMap<String, String>(verbEventTypes);
+    EventType eventType = ACTION_EVENT_TYPES.get(action);
+    if (eventType != null) {
+      verbs.put(verbId, eventType.getValue());
+    }
+    else {
+      verbs.remove(verbId);
+    }
+    return new XApiVocabulary(Collections.unmodifiableMap(verbs), caliperTypes, xapiTypes);
+  }
+
+  XApiVocabulary withObjectType(String xapiType, Type caliperType) {
+    Map<String, String> toCaliper = new HashMap<String, String>(caliperTypes);
+    Map<String, String> toXapi = new HashMap<String, String>(xapiTypes);
+    // types map one to one, so drop whatever either side was mapped to before
+    String previousCaliperType = toCaliper.remove(xapiType);
+    if (previousCaliperType != null) {
+      toXapi.remove(previousCaliperType);
+    }
+    String previousXapiType = toXapi.remove(caliperType.getValue());
+    if (previousXapiType != null) {
+      toCaliper.remove(previousXapiType);
+    }
+    toCaliper.put(xapiType, caliperType.getValue());
+    toXapi.put(caliperType.getValue(), xapiType);
+    return new XApiVocabulary(verbEventTypes, Collections.unmodifiableMap(toCaliper), Collections.unmodifiableMap(toXapi));
+  }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, lock-free histogram of non-negative values. Values below
+ * 128 get a bucket each; above that every power of two is split into 64
+ * buckets, so a reported percentile is within about 1.6% of the true value.
+ */
+public final class Histogram {
+
+  private static final int SUB_BUCKETS = 64;
+
+  private final AtomicLongArray counts = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+
+  public void record(long value) {
+    counts.incrementAndGet(bucket(Math.max(0, value)));
+  }
+
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /** the lower bound of the bucket holding the given quantile, 0 when empty */
+  public long percentile(double quantile) {
+    long rank = (long) Math.ceil(quantile * count());
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen > 0 && seen >= rank) {
+        return value(i);
+      }
+    }
+    return 0;
+  }
+
+  public long max() {
+    for (int i = counts.length() - 1; i >= 0; i--) {
+      if (counts.get(i) > 0) {
+        return value(i);
+      }
+    }
+    return 0;
+  }
+
+  private static int bucket(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 57 - Long.numberOfLeadingZeros(value);
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  private static long value(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+  }
+
+}
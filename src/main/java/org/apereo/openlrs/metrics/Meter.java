@@ -0,0 +1,76 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named, tagged series of recorded values: a timer (values in
+ * nanoseconds, reported in milliseconds) or a distribution such as batch
+ * sizes (reported as recorded).
+ */
+public class Meter {
+
+  private final String name;
+  private final Map<String, String> tags;
+  private final boolean timer;
+  private final Histogram histogram = new Histogram();
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+
+  Meter(String name, Map<String, String> tags, boolean timer) {
+    this.name = name;
+    this.tags = tags;
+    this.timer = timer;
+  }
+
+  public void record(long value) {
+    histogram.record(value);
+    count.increment();
+    total.add(value);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Map<String, String> getTags() {
+    return tags;
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  Map<String, Object> snapshot() {
+    long n = count.sum();
+    double scale = timer ? 1e-6 : 1;
+    Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+    snapshot.put("name", name);
+    snapshot.put("tags", tags);
+    snapshot.put("unit", timer ? "milliseconds" : "count");
+    snapshot.put("count", n);
+    snapshot.put("mean", n == 0 ? 0 : total.sum() * scale / n);
+    snapshot.put("p50", histogram.percentile(0.5) * scale);
+    snapshot.put("p99", histogram.percentile(0.99) * scale);
+    snapshot.put("p999", histogram.percentile(0.999) * scale);
+    snapshot.put("max", histogram.max() * scale);
+    return snapshot;
+  }
+
+}
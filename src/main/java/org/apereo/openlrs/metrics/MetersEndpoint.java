@@ -0,0 +1,46 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint at /meters listing every {@link Metrics} series with
+ * its tags, count, mean, percentiles and max. Off by default like the
+ * built in endpoints; endpoints.meters.enabled=true switches it on.
+ */
+@ConfigurationProperties(prefix = "endpoints.meters")
+@Component
+public class MetersEndpoint extends AbstractEndpoint<List<Map<String, Object>>> {
+
+  @Autowired private Metrics metrics;
+
+  public MetersEndpoint() {
+    super("meters");
+  }
+
+  @Override
+  public List<Map<String, Object>> invoke() {
+    return metrics.snapshot();
+  }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process timers and distributions, identified by a name plus tags
+ * given as key, value pairs, e.g.
+ * <pre>
+ * metrics.recordTime("openlrs.storage", nanos, "backend", "MongoWriter", "tenant", "3");
+ * </pre>
+ * Every series keeps a histogram, so percentiles come from all recorded
+ * values rather than a sample. Once maxMeters series exist, new tenants
+ * are folded into tenant "other" so the registry cannot grow without bound.
+ * Served by {@link MetersEndpoint}.
+ */
+@Component
+public class Metrics {
+
+  static final String OTHER_TENANT = "other";
+
+  @Value("${openlrs.metrics.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${openlrs.metrics.maxMeters:10000}")
+  private int maxMeters = 10000;
+
+  private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<String, Meter>();
+
+  /** records a duration measured with System.nanoTime() */
+  public void recordTime(String name, long nanos, String... tags) {
+    if (enabled) {
+      meter(name, true, tags).record(nanos);
+    }
+  }
+
+  /** records a plain value such as a batch size */
+  public void recordValue(String name, long value, String... tags) {
+    if (enabled) {
+      meter(name, false, tags).record(value);
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public List<Map<String, Object>> snapshot() {
+    List<Map<String, Object>> snapshot = new ArrayList<Map<String, Object>>(meters.size());
+    for (Meter meter : meters.values()) {
+      snapshot.add(meter.snapshot());
+    }
+    return snapshot;
+  }
+
+  private Meter meter(String name, boolean timer, String[] tags) {
+    Meter meter = meters.get(key(name, tags));
+    if (meter == null) {
+      String[] meterTags = meters.size() < maxMeters ? tags : withOtherTenant(tags);
+      meter = meters.computeIfAbsent(key(name, meterTags), k -> new Meter(name, tagMap(meterTags), timer));
+    }
+    return meter;
+  }
+
+  private static String key(String name, String[] tags) {
+    StringBuilder key = new StringBuilder(name);
+    for (String tag : tags) {
+      key.append('\u0000').append(tag);
+    }
+    return key.toString();
+  }
+
+  private static Map<String, String> tagMap(String[] tags) {
+    if (tags.length % 2 != 0) {
+      throw new IllegalArgumentException("Tags must be key, value pairs");
+    }
+    Map<String, String> map = new LinkedHashMap<String, String>();
+    for (int i = 0; i < tags.length; i += 2) {
+      map.put(tags[i], tags[i + 1]);
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  private static String[] withOtherTenant(String[] tags) {
+    String[] folded = tags.clone();
+    for (int i = 0; i + 1 < folded.length; i += 2) {
+      if ("tenant".equals(folded[i])) {
+        folded[i + 1] = OTHER_TENANT;
+      }
+    }
+    return folded;
+  }
+
+}
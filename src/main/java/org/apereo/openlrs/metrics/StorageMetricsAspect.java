@@ -0,0 +1,77 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.metrics;
+
+import java.util.Collection;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Times every {@link org.apereo.openlrs.storage.Reader} and
+ * {@link org.apereo.openlrs.storage.Writer} call, tagged with the backend
+ * class, method, tenant and whether it threw, and records the size of
+ * every saveAll batch. An aspect rather than another decorator, so it
+ * covers readers and writers alike and stacks with StatsAggregatingWriter.
+ */
+@ConditionalOnProperty(name="openlrs.metrics.enabled", havingValue="true", matchIfMissing=true)
+@Aspect
+@Component
+public class StorageMetricsAspect {
+
+  @Autowired private Metrics metrics;
+
+  @Around("execution(* org.apereo.openlrs.storage.Reader.*(..)) || execution(* org.apereo.openlrs.storage.Writer.*(..))")
+  public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      Object result = joinPoint.proceed();
+      failed = false;
+      return result;
+    }
+    finally {
+      long nanos = System.nanoTime() - start;
+      String backend = ClassUtils.getUserClass(joinPoint.getTarget()).getSimpleName();
+      String method = joinPoint.getSignature().getName();
+      Object[] args = joinPoint.getArgs();
+      String tenant = tenant(args);
+
+      metrics.recordTime("openlrs.storage", nanos, "backend", backend, "method", method, "tenant", tenant,
+          "outcome", failed ? "error" : "success");
+      if ("saveAll".equals(method) && args.length > 0 && args[0] instanceof Collection) {
+        metrics.recordValue("openlrs.storage.batch.size", ((Collection<?>) args[0]).size(),
+            "backend", backend, "tenant", tenant);
+      }
+    }
+  }
+
+  /** the tenant id is the first String argument of every Reader and Writer method */
+  private static String tenant(Object[] args) {
+    for (Object arg : args) {
+      if (arg instanceof String) {
+        return (String) arg;
+      }
+    }
+    return "none";
+  }
+
+}
@@ -6,6 +6,7 @@ package org.apereo.openlrs.model.event;
 import java.io.Serializable;
 
 import org.apache.log4j.Logger;
+import org.apereo.openlrs.utils.JsonUtils;
 import org.joda.time.DateTime;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
@@ -17,12 +18,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.fasterxml.jackson.datatype.joda.ser.DateTimeSerializer;
 import com.google.gson.annotations.SerializedName;
 
@@ -58,6 +54,13 @@ public class Event implements Serializable {
   private Target target;
   private Generated generated;
   private Group group;
+  /**
+   * the xAPI statement as received, only kept when openlrs.rawStatements is
+   * on. Never read from or written to JSON, storage wrappers that serialize
+   * events carry it next to the event.
+   */
+  @JsonIgnore
+  private String rawStatement;
 
   @JsonCreator
   public Event(@JsonProperty("id") String id,
@@ -137,6 +140,14 @@ public class Event implements Serializable {
     return group;
   }
 
+  public String getRawStatement() {
+    return rawStatement;
+  }
+
+  public void setRawStatement(String rawStatement) {
+    this.rawStatement = rawStatement;
+  }
+
   @Override
   public String toString() {
     return "Event [context=" + context + ", type=" + type + ", eventTime=" + eventTime + ", actor=" + actor + ", action=" + action + ", object="
@@ -145,18 +156,6 @@ public class Event implements Serializable {
 
   @JsonIgnore
   public String toJSON() {
-    ObjectMapper om = new ObjectMapper();
-    om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-    om.enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
-    om.registerModule(new JodaModule());
-    
-    String rawJson = null;
-    try {
-      rawJson = om.writer().writeValueAsString(this);
-    } 
-    catch (JsonProcessingException e) {
-      log.error(e.getMessage(), e); 
-    }
-    return rawJson;
+    return JsonUtils.toJodaJson(this);
   }
 }
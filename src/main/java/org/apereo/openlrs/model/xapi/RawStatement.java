@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.model.xapi;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * A stored statement's JSON, written into responses as is rather than
+ * mapped back from its event.
+ */
+public class RawStatement implements JsonSerializable {
+
+	private final String json;
+
+	public RawStatement(String json) {
+		this.json = json;
+	}
+
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		gen.writeRawValue(json);
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+			throws IOException {
+		serialize(gen, serializers);
+	}
+
+	@Override
+	public String toString() {
+		return json;
+	}
+
+}
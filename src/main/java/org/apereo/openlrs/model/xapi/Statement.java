@@ -18,6 +18,7 @@ package org.apereo.openlrs.model.xapi;
 import javax.validation.constraints.NotNull;
 
 import org.apache.log4j.Logger;
+import org.apereo.openlrs.utils.JsonUtils;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.elasticsearch.annotations.Document;
@@ -27,8 +28,6 @@ import org.springframework.data.elasticsearch.annotations.FieldType;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * The statement model represents all the available properties of a learning event
@@ -228,15 +227,7 @@ public class Statement {
 
     @JsonIgnore
     public String toJSON() {
-    	ObjectMapper om = new ObjectMapper();
-    	String rawJson = null;
-    	try {
-			rawJson = om.writer().writeValueAsString(this);
-		} 
-    	catch (JsonProcessingException e) {
-			log.error(e.getMessage(), e); 
-		}
-		return rawJson;
+    	return JsonUtils.toJson(this);
     }
 
     @Override
@@ -15,30 +15,77 @@
  */
 package org.apereo.openlrs.model.xapi;
 
-import java.util.List;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 
 /**
+ * Serializes itself so the statements are pulled from their Iterable one
+ * at a time while the response is written. A lazily converting Iterable
+ * never holds more than one converted statement.
+ * 
  * @author ggilbert
  *
  */
-public class StatementResult {
+public class StatementResult implements JsonSerializable {
+	
+	private Iterable<?> statements;
+	private String more;
 	
-	private List<Statement> statements;
+	public StatementResult(Iterable<?> statements) {
+		this.statements = statements;
+	}
 	
-	public StatementResult(List<Statement> statements) {
+	public StatementResult(Iterable<?> statements, String more) {
 		this.statements = statements;
+		this.more = more;
 	}
 
-	public List<Statement> getStatements() {
+	/**
+	 * @return a mix of {@link Statement} and {@link RawStatement}
+	 */
+	public Iterable<?> getStatements() {
 		return statements;
 	}
 
+	/**
+	 * @return IRL to fetch the next page of results, or null when there is nothing more to read
+	 */
+	public String getMore() {
+		return more;
+	}
+
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		gen.writeStartObject();
+		if (statements != null) {
+			gen.writeArrayFieldStart("statements");
+			for (Object statement : statements) {
+				serializers.defaultSerializeValue(statement, gen);
+			}
+			gen.writeEndArray();
+		}
+		if (more != null) {
+			gen.writeStringField("more", more);
+		}
+		gen.writeEndObject();
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+			throws IOException {
+		serialize(gen, serializers);
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		return "StatementResult [statements=" + statements + "]";
+		return "StatementResult [statements=" + statements + ", more=" + more + "]";
 	}
 
 }
@@ -0,0 +1,70 @@
+/**
+ * 
+ */
+package org.apereo.openlrs.storage;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apereo.openlrs.model.event.Event;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * A slice of a tenant's events plus an opaque continuation cursor.
+ * Passing {@link #getNext()} back to the reader resumes where this slice
+ * ended, so walking a whole tenant costs the same per page no matter how
+ * deep the walk goes. A null next cursor means there is nothing more to read.
+ * The cursor format is private to the Reader that produced it.
+ *
+ */
+@JsonInclude(Include.NON_NULL)
+public class CursorPage implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private List<Event> content;
+  private String next;
+
+  public CursorPage(List<Event> content, String next) {
+    this.content = content;
+    this.next = next;
+  }
+
+  /**
+   * Parses a requested page size for a cursor read, capped at maxLimit.
+   * @throws IllegalArgumentException if limit is not a positive number
+   */
+  public static int limit(String limit, int maxLimit) {
+    int value;
+    try {
+      value = Integer.parseInt(limit);
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("Invalid limit %s", limit), e);
+    }
+    if (value <= 0) {
+      throw new IllegalArgumentException(String.format("Invalid limit %s", limit));
+    }
+    return Math.min(value, maxLimit);
+  }
+
+  public List<Event> getContent() {
+    return content;
+  }
+
+  public String getNext() {
+    return next;
+  }
+
+  public boolean hasContent() {
+    return content != null && !content.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "CursorPage [content=" + content + ", next=" + next + "]";
+  }
+
+}
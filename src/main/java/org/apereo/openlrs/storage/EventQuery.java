@@ -0,0 +1,137 @@
+/**
+ * 
+ */
+package org.apereo.openlrs.storage;
+
+import java.io.Serializable;
+
+import org.joda.time.DateTime;
+
+/**
+ * Criteria for {@link Reader#findByQuery(String, EventQuery)}. Every field
+ * is optional and the ones that are set are combined with AND. Ids and the
+ * action match exactly; since is exclusive and until inclusive, both on
+ * the chosen {@link TimeField}. Results are ordered on that field.
+ *
+ */
+public class EventQuery implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public enum TimeField { EVENT_TIME, STORED_TIME }
+
+  private String actor;
+  private String action;
+  private String object;
+  private String group;
+  private DateTime since;
+  private DateTime until;
+  private TimeField timeField = TimeField.STORED_TIME;
+  private int limit = 1000;
+  private boolean ascending;
+
+  private EventQuery() {}
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public String getActor() {
+    return actor;
+  }
+
+  public String getAction() {
+    return action;
+  }
+
+  public String getObject() {
+    return object;
+  }
+
+  public String getGroup() {
+    return group;
+  }
+
+  public DateTime getSince() {
+    return since;
+  }
+
+  public DateTime getUntil() {
+    return until;
+  }
+
+  public TimeField getTimeField() {
+    return timeField;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public boolean isAscending() {
+    return ascending;
+  }
+
+  @Override
+  public String toString() {
+    return "EventQuery [actor=" + actor + ", action=" + action + ", object=" + object + ", group=" + group + ", since=" + since
+        + ", until=" + until + ", timeField=" + timeField + ", limit=" + limit + ", ascending=" + ascending + "]";
+  }
+
+  public static class Builder {
+    private final EventQuery query = new EventQuery();
+
+    public Builder actor(String actor) {
+      query.actor = actor;
+      return this;
+    }
+
+    public Builder action(String action) {
+      query.action = action;
+      return this;
+    }
+
+    public Builder object(String object) {
+      query.object = object;
+      return this;
+    }
+
+    public Builder group(String group) {
+      query.group = group;
+      return this;
+    }
+
+    public Builder since(DateTime since) {
+      query.since = since;
+      return this;
+    }
+
+    public Builder until(DateTime until) {
+      query.until = until;
+      return this;
+    }
+
+    public Builder timeField(TimeField timeField) {
+      query.timeField = timeField;
+      return this;
+    }
+
+    public Builder limit(int limit) {
+      if (limit <= 0) {
+        throw new IllegalArgumentException(String.format("Invalid limit %d", limit));
+      }
+      query.limit = limit;
+      return this;
+    }
+
+    public Builder ascending(boolean ascending) {
+      query.ascending = ascending;
+      return this;
+    }
+
+    public EventQuery build() {
+      return query;
+    }
+  }
+
+}
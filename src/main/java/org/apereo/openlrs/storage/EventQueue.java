@@ -0,0 +1,19 @@
+/**
+ * 
+ */
+package org.apereo.openlrs.storage;
+
+import java.util.Collection;
+
+import org.apereo.openlrs.model.event.Event;
+
+/**
+ * Accepts events for a later write to the configured {@link Writer}.
+ * Implementations return as soon as the events are accepted and throw
+ * {@link org.apereo.openlrs.exceptions.TooManyRequestsException} when
+ * they cannot take more.
+ *
+ */
+public interface EventQueue {
+  void enqueue(Collection<Event> events, String tenantId);
+}
@@ -5,8 +5,10 @@ package org.apereo.openlrs.storage;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.EventStats;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -16,9 +18,34 @@ import org.springframework.data.domain.Pageable;
  */
 public interface Reader {
   Page<Event> findByTenantId(String tenantId, Pageable pageable);
+  /**
+   * Reads a tenant's events in storage order, starting after the given cursor.
+   * 
+   * @param cursor the next cursor of a previous {@link CursorPage}, or null to start from the beginning
+   * @param limit maximum number of events to return
+   * @throws IllegalArgumentException if the cursor was not produced by this reader
+   */
+  CursorPage findByTenantId(String tenantId, String cursor, int limit);
   Page<Event> findByTenantIdAndContext(String tenantId, String context, Pageable pageable);
   Page<Event> findByTenantIdAndUser(String tenantId, String user, Pageable pageable);
   Event findByTenantIdAndEventId(String tenantId, String eventId);
+  /**
+   * Counts a course's events by week and by student, matching the course
+   * the same way as findByTenantIdAndContext. Implementations aggregate in
+   * the store so only the counts are transferred.
+   */
+  EventStats findStatsByTenantIdAndContext(String tenantId, String context);
+  /**
+   * Runs all of the query's criteria as one query in the store, returning
+   * at most query.getLimit() events ordered on its time field.
+   */
+  List<Event> findByQuery(String tenantId, EventQuery query);
+  /**
+   * Checks many event ids in one round trip.
+   * 
+   * @return the subset of eventIds that the tenant already has
+   */
+  Set<String> findExistingEventIds(String tenantId, Collection<String> eventIds);
   Event save(Event event, String tenantId);
   List<Event> saveAll(Collection<Event> events, String tenantId);
 }
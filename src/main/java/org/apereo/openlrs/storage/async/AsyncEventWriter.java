@@ -0,0 +1,242 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.async;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apereo.openlrs.exceptions.TooManyRequestsException;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.EventQueue;
+import org.apereo.openlrs.storage.Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Takes events off the request thread. Controllers enqueue into a bounded
+ * queue and return; worker threads drain it into the configured
+ * {@link Writer} in batches, flushing when a batch is full or when
+ * flushIntervalMillis has passed since its first event. A full queue is
+ * reported as a {@link TooManyRequestsException} instead of blocking.
+ *
+ * A batch the writer fails to save is retried up to maxRetries times,
+ * doubling retryBackoffMillis between attempts; the worker holds the batch
+ * meanwhile, so a failing backend fills the queue and producers see 429s.
+ * If every attempt fails the batch is logged, counted as
+ * openlrs.ingest.failed and dropped, although its events were accepted.
+ *
+ * Enabled with openlrs.ingest.async=true. The queue lives in memory, so
+ * queued events are lost if the process dies; see WalEventWriter, which
+ * keeps failed events in its log until they are written.
+ */
+@ConditionalOnProperty(name="openlrs.ingest.async", havingValue="true")
+@Component
+public class AsyncEventWriter implements EventQueue {
+
+  private Logger log = LoggerFactory.getLogger(AsyncEventWriter.class);
+
+  @Value("${openlrs.ingest.queueCapacity:10000}")
+  private int queueCapacity;
+
+  @Value("${openlrs.ingest.batchSize:500}")
+  private int batchSize;
+
+  @Value("${openlrs.ingest.flushIntervalMillis:200}")
+  private long flushIntervalMillis;
+
+  @Value("${openlrs.ingest.workers:2}")
+  private int workers;
+
+  @Value("${openlrs.ingest.maxRetries:3}")
+  private int maxRetries;
+
+  @Value("${openlrs.ingest.retryBackoffMillis:100}")
+  private long retryBackoffMillis;
+
+  @Autowired private Writer writer;
+  @Autowired private GaugeService gaugeService;
+  @Autowired private CounterService counterService;
+
+  private BlockingQueue<QueuedEvent> queue;
+  private ExecutorService executor;
+  private volatile boolean running;
+
+  /** producers hold this so a whole request is enqueued or none of it is */
+  private final Object enqueueLock = new Object();
+
+  @PostConstruct
+  public void start() {
+    queue = new ArrayBlockingQueue<QueuedEvent>(queueCapacity);
+    executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("openlrs-ingest-"));
+    running = true;
+    for (int i = 0; i < workers; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      });
+    }
+    log.info(String.format("Async ingestion started, capacity %d, batch size %d, flush interval %d ms, workers %d",
+        queueCapacity, batchSize, flushIntervalMillis, workers));
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    // workers keep going until the queue is empty
+    running = false;
+    executor.shutdown();
+    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+      log.warn(String.format("Async ingestion stopped with %d events still queued", queue.size()));
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public void enqueue(Collection<Event> events, String tenantId) {
+    if (events == null || events.isEmpty()) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    synchronized (enqueueLock) {
+      // workers only ever free space, so this check cannot go stale under the lock
+      if (!running || queue.remainingCapacity() < events.size()) {
+        counterService.increment("openlrs.ingest.rejected");
+        throw new TooManyRequestsException("Event queue is full, retry later");
+      }
+      for (Event event : events) {
+        queue.offer(new QueuedEvent(tenantId, event, now));
+      }
+    }
+    gaugeService.submit("openlrs.ingest.queue.depth", queue.size());
+  }
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  private void drain() {
+    List<QueuedEvent> batch = new ArrayList<QueuedEvent>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        QueuedEvent first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          long remaining = deadline - System.nanoTime();
+          if (batch.size() >= batchSize || remaining <= 0) {
+            break;
+          }
+          QueuedEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+
+        write(batch);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void write(List<QueuedEvent> batch) throws InterruptedException {
+    // Writer.saveAll is per tenant, so split the batch keeping arrival order
+    Map<String, List<Event>> eventsByTenant = new LinkedHashMap<String, List<Event>>();
+    long oldest = Long.MAX_VALUE;
+    for (QueuedEvent queuedEvent : batch) {
+      List<Event> events = eventsByTenant.get(queuedEvent.tenantId);
+      if (events == null) {
+        events = new ArrayList<Event>();
+        eventsByTenant.put(queuedEvent.tenantId, events);
+      }
+      events.add(queuedEvent.event);
+      oldest = Math.min(oldest, queuedEvent.enqueuedAt);
+    }
+
+    for (Map.Entry<String, List<Event>> entry : eventsByTenant.entrySet()) {
+      save(entry.getValue(), entry.getKey());
+    }
+
+    gaugeService.submit("openlrs.ingest.queue.depth", queue.size());
+    gaugeService.submit("openlrs.ingest.latency", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest));
+  }
+
+  private void save(List<Event> events, String tenantId) throws InterruptedException {
+    long backoff = retryBackoffMillis;
+    for (int attempt = 0; ; attempt++) {
+      try {
+        writer.saveAll(events, tenantId);
+        counterService.increment("openlrs.ingest.batches");
+        return;
+      }
+      catch (Exception e) {
+        if (attempt >= maxRetries) {
+          log.error(String.format("Dropping %d events for tenant %s after %d attempts", events.size(), tenantId, attempt + 1), e);
+          counterService.increment("openlrs.ingest.failed");
+          return;
+        }
+        log.warn(String.format("Unable to write %d events for tenant %s, retrying in %d ms", events.size(), tenantId, backoff), e);
+        counterService.increment("openlrs.ingest.retried");
+        TimeUnit.MILLISECONDS.sleep(backoff);
+        backoff *= 2;
+      }
+    }
+  }
+
+  private static class QueuedEvent {
+    private final String tenantId;
+    private final Event event;
+    private final long enqueuedAt;
+
+    QueuedEvent(String tenantId, Event event, long enqueuedAt) {
+      this.tenantId = tenantId;
+      this.event = event;
+      this.enqueuedAt = enqueuedAt;
+    }
+  }
+
+}
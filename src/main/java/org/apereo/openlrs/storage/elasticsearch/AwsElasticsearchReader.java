@@ -4,22 +4,39 @@
 package org.apereo.openlrs.storage.elasticsearch;
 
 import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
 import io.searchbox.core.Search;
 import io.searchbox.core.SearchResult;
 import io.searchbox.core.SearchResult.Hit;
+import io.searchbox.core.SearchScroll;
 import io.searchbox.params.Parameters;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.EventStats;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQuery;
 import org.apereo.openlrs.storage.Reader;
+import org.apereo.openlrs.storage.stats.EventStatsBuilder;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,6 +51,9 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
+ * Documents follow es/event.mapping: actor, object and group are nested
+ * objects keyed by @id, so every query on them is a nested query.
+ *
  * @author ggilbert
  *
  */
@@ -41,6 +61,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @Component("AwsElasticsearchReader")
 public class AwsElasticsearchReader implements Reader {
   
+  private static final String SCROLL_KEEP_ALIVE = "1m";
+
   private Logger log = LoggerFactory.getLogger(AwsElasticsearchReader.class);
   
   @Value("${aws.es.connectionUrl}")
@@ -51,192 +73,269 @@ public class AwsElasticsearchReader implements Reader {
   
   @Override
   public Page<Event> findByTenantId(String tenantId, Pageable pageable) {
+    return search(tenantId, QueryBuilders.matchAllQuery(), pageable);
+  }
+
+  @Override
+  public CursorPage findByTenantId(String tenantId, String cursor, int limit) {
+    // the cursor is a scroll id; the page size is fixed by the first request
+    JestResult result = null;
+    try {
+      if (StringUtils.isBlank(cursor)) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.query(QueryBuilders.matchAllQuery());
+        searchSourceBuilder.sort(SortBuilders.fieldSort("storedTime").order(SortOrder.ASC).ignoreUnmapped(true));
+        
+        Search search = new Search.Builder(searchSourceBuilder.toString())
+        .addIndex(tenantId)
+        .setParameter(Parameters.SIZE, limit)
+        .setParameter(Parameters.SCROLL, SCROLL_KEEP_ALIVE)
+        .build();
+        result = jestClient.execute(search);
+      }
+      else {
+        result = jestClient.execute(new SearchScroll.Builder(cursor, SCROLL_KEEP_ALIVE).build());
+        if (result != null && !result.isSucceeded()) {
+          throw new IllegalArgumentException(String.format("Invalid or expired cursor %s", cursor));
+        }
+      }
+      
+      if (result != null && result.isSucceeded()) {
+        JsonNode resultsNode = objectMapper.readTree(result.getJsonString());
+        List<Event> events = readHits(resultsNode.get("hits"));
+        String next = events.isEmpty() ? null : resultsNode.path("_scroll_id").asText(null);
+        return new CursorPage(events, next);
+      }
+    }
+    catch (IOException e) {
+      log.error(e.getMessage(),e);
+    }
     
-    Page<Event> page = null;
-    
-    int offset = (pageable == null) ? 0 : pageable.getOffset();
-    int pagesize = (pageable == null) ? 1000 : pageable.getPageSize();
+    return new CursorPage(new ArrayList<Event>(), null);
+  }
+
+  @Override
+  public Page<Event> findByTenantIdAndContext(String tenantId, String context, Pageable pageable) {
+    return search(tenantId, QueryBuilders.nestedQuery("group", QueryBuilders.matchPhraseQuery("group.@id", context)), pageable);
+  }
+
+  @Override
+  public Page<Event> findByTenantIdAndUser(String tenantId, String user, Pageable pageable) {
+    return search(tenantId, QueryBuilders.nestedQuery("actor", QueryBuilders.matchPhraseQuery("actor.@id", user)), pageable);
+  }
+
+  @Override
+  public Event findByTenantIdAndEventId(String tenantId, String eventId) {
+    Event event = null;
     
     SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-    searchSourceBuilder.query(QueryBuilders.matchAllQuery());
+    searchSourceBuilder.query(QueryBuilders.matchPhraseQuery("id", eventId));    
 
     Search search = new Search.Builder(searchSourceBuilder.toString())
     .addIndex(tenantId)
-    .setParameter("from", offset)
-    .setParameter(Parameters.SIZE, pagesize)
     .build();
     
     try {
       SearchResult result = jestClient.execute(search);
       if (result != null) {
-        log.info(result.getJsonString());
-        
-        JsonNode resultsNode = objectMapper.readTree(result.getJsonString());
-        if (resultsNode != null) {
-          JsonNode hitsNode = resultsNode.get("hits");
-          int total = hitsNode.get("total").intValue();
-          if (total > 0) {
-            JsonNode hitsArrayNode = hitsNode.get("hits");
-            if (hitsArrayNode != null && hitsArrayNode.isArray()) {
-              List<Event> events = new ArrayList<>();
-              Iterator<JsonNode> i = hitsArrayNode.elements();
-              while(i.hasNext()) {
-                JsonNode hit = i.next();
-                JsonNode source = hit.get("_source");
-                log.info(source.toString());
-                Event event = objectMapper.readValue(source.toString(), Event.class);
-                events.add(event);
-              }
-              page = new PageImpl<Event>(events, pageable, events.size());
-            }
+        List<Hit<Event, Void>> hits = result.getHits(Event.class);
+        if (hits != null && !hits.isEmpty()) {
+          List<Event> events = new LinkedList<Event>();
+          for (Hit<Event,Void> hit : hits) {
+            events.add(hit.source);
           }
+          event = events.get(0);
         }
-        
-        
-//        List<Event> events = result.getSourceAsObjectList(Event.class);
-//        page = new PageImpl<Event>(events, pageable, events.size());
-        
-//        List<Hit<Event, Void>> hits = result.getHits();
-//        if (hits != null && !hits.isEmpty()) {
-//          List<Event> events = new LinkedList<Event>();
-//          for (Hit<Event,Void> hit : hits) {
-//            events.add(hit.source);
-//          }
-//          
-//          page = new PageImpl<Event>(events, pageable, events.size());
-//        }
       }
     } 
     catch (IOException e) {
       log.error(e.getMessage(),e);
     }
 
-    return page;
+    return event;
   }
 
+  /**
+   * Aggregates in the index: a weekly date_histogram (Monday, UTC) over the
+   * course, and per actor id a terms bucket under the nested actor field
+   * with a reverse_nested weekly histogram.
+   */
   @Override
-  public Page<Event> findByTenantIdAndContext(String tenantId, String context, Pageable pageable) {
-    Page<Event> page = null;
-    
-    int offset = (pageable == null) ? 0 : pageable.getOffset();
-    int pagesize = (pageable == null) ? 1000 : pageable.getPageSize();
+  public EventStats findStatsByTenantIdAndContext(String tenantId, String context) {
+    EventStatsBuilder builder = new EventStatsBuilder();
     
     SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-    searchSourceBuilder.query(QueryBuilders.matchPhraseQuery("group.id", context));
-
+    searchSourceBuilder.query(QueryBuilders.nestedQuery("group", QueryBuilders.matchPhraseQuery("group.@id", context)));
+    searchSourceBuilder.size(0);
+    searchSourceBuilder.aggregation(weeks());
+    searchSourceBuilder.aggregation(AggregationBuilders.nested("actors").path("actor")
+        .subAggregation(AggregationBuilders.terms("students").field("actor.@id").size(0)
+            .subAggregation(AggregationBuilders.terms("names").field("actor.name").size(1))
+            .subAggregation(AggregationBuilders.reverseNested("events").subAggregation(weeks()))));
+    
     Search search = new Search.Builder(searchSourceBuilder.toString())
     .addIndex(tenantId)
-    .setParameter("from", offset)
-    .setParameter(Parameters.SIZE, pagesize)
     .build();
     
     try {
-      SearchResult result = jestClient.execute(search);
-      if (result != null) {
-        log.info(result.getJsonString());
-        
+      JestResult result = jestClient.execute(search);
+      if (result != null && result.isSucceeded()) {
         JsonNode resultsNode = objectMapper.readTree(result.getJsonString());
-        if (resultsNode != null) {
-          JsonNode hitsNode = resultsNode.get("hits");
-          int total = hitsNode.get("total").intValue();
-          if (total > 0) {
-            JsonNode hitsArrayNode = hitsNode.get("hits");
-            if (hitsArrayNode != null && hitsArrayNode.isArray()) {
-              List<Event> events = new ArrayList<>();
-              Iterator<JsonNode> i = hitsArrayNode.elements();
-              while(i.hasNext()) {
-                JsonNode hit = i.next();
-                JsonNode source = hit.get("_source");
-                log.info(source.toString());
-                Event event = objectMapper.readValue(source.toString(), Event.class);
-                events.add(event);
-              }
-              page = new PageImpl<Event>(events, pageable, events.size());
-            }
+        builder.total(resultsNode.path("hits").path("total").longValue());
+        
+        JsonNode aggregations = resultsNode.path("aggregations");
+        for (JsonNode week : aggregations.path("weeks").path("buckets")) {
+          builder.week(week.path("key_as_string").asText(), week.path("doc_count").longValue());
+        }
+        for (JsonNode student : aggregations.path("actors").path("students").path("buckets")) {
+          String studentId = student.path("key").asText();
+          JsonNode names = student.path("names").path("buckets");
+          String name = (names.size() > 0) ? names.get(0).path("key").asText() : null;
+          long inWeeks = 0;
+          for (JsonNode week : student.path("events").path("weeks").path("buckets")) {
+            builder.student(studentId, name, week.path("key_as_string").asText(), week.path("doc_count").longValue());
+            inWeeks += week.path("doc_count").longValue();
           }
+          builder.student(studentId, name, null, student.path("doc_count").longValue() - inWeeks);
         }
-                
       }
-    } 
+    }
     catch (IOException e) {
       log.error(e.getMessage(),e);
     }
-
-    return page;
+    return builder.build();
   }
 
+  /**
+   * Every criterion goes into one bool query against the tenant's index.
+   * The ids and the action are not_analyzed, so they are exact term queries.
+   */
   @Override
-  public Page<Event> findByTenantIdAndUser(String tenantId, String user, Pageable pageable) {
-    Page<Event> page = null;
-    
-    int offset = (pageable == null) ? 0 : pageable.getOffset();
-    int pagesize = (pageable == null) ? 1000 : pageable.getPageSize();
+  public List<Event> findByQuery(String tenantId, EventQuery eventQuery) {
+    BoolQueryBuilder query = QueryBuilders.boolQuery().must(QueryBuilders.matchAllQuery());
+    if (eventQuery.getActor() != null) {
+      query.must(QueryBuilders.nestedQuery("actor", QueryBuilders.termQuery("actor.@id", eventQuery.getActor())));
+    }
+    if (eventQuery.getGroup() != null) {
+      query.must(QueryBuilders.nestedQuery("group", QueryBuilders.termQuery("group.@id", eventQuery.getGroup())));
+    }
+    if (eventQuery.getAction() != null) {
+      query.must(QueryBuilders.termQuery("action", eventQuery.getAction()));
+    }
+    if (eventQuery.getObject() != null) {
+      query.must(QueryBuilders.nestedQuery("object", QueryBuilders.termQuery("object.@id", eventQuery.getObject())));
+    }
+    String timeField = (eventQuery.getTimeField() == EventQuery.TimeField.EVENT_TIME) ? "eventTime" : "storedTime";
+    if (eventQuery.getSince() != null || eventQuery.getUntil() != null) {
+      RangeQueryBuilder range = QueryBuilders.rangeQuery(timeField);
+      if (eventQuery.getSince() != null) {
+        range.gt(eventQuery.getSince().toString());
+      }
+      if (eventQuery.getUntil() != null) {
+        range.lte(eventQuery.getUntil().toString());
+      }
+      query.must(range);
+    }
     
     SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-    searchSourceBuilder.query(QueryBuilders.matchPhraseQuery("actor.id", user));
+    searchSourceBuilder.query(query);
+    searchSourceBuilder.sort(SortBuilders.fieldSort(timeField).order(eventQuery.isAscending() ? SortOrder.ASC : SortOrder.DESC).ignoreUnmapped(true));
+    searchSourceBuilder.size(eventQuery.getLimit());
+    
+    Search search = new Search.Builder(searchSourceBuilder.toString())
+    .addIndex(tenantId)
+    .build();
+    
+    try {
+      JestResult result = jestClient.execute(search);
+      if (result != null && result.isSucceeded()) {
+        return readHits(objectMapper.readTree(result.getJsonString()).get("hits"));
+      }
+    }
+    catch (IOException e) {
+      log.error(e.getMessage(),e);
+    }
+    return new ArrayList<Event>();
+  }
 
+  @Override
+  public Set<String> findExistingEventIds(String tenantId, Collection<String> eventIds) {
+    Set<String> existing = new HashSet<>();
+    if (eventIds == null || eventIds.isEmpty()) {
+      return existing;
+    }
+    
+    BoolQueryBuilder anyId = QueryBuilders.boolQuery().minimumNumberShouldMatch(1);
+    for (String eventId : eventIds) {
+      anyId.should(QueryBuilders.matchPhraseQuery("id", eventId));
+    }
+    SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+    searchSourceBuilder.query(anyId);
+    searchSourceBuilder.size(eventIds.size());
+    
     Search search = new Search.Builder(searchSourceBuilder.toString())
     .addIndex(tenantId)
-    .setParameter("from", offset)
-    .setParameter(Parameters.SIZE, pagesize)
     .build();
     
     try {
-      SearchResult result = jestClient.execute(search);
-      if (result != null) {
-        log.info(result.getJsonString());
-        
-        JsonNode resultsNode = objectMapper.readTree(result.getJsonString());
-        if (resultsNode != null) {
-          JsonNode hitsNode = resultsNode.get("hits");
-          int total = hitsNode.get("total").intValue();
-          if (total > 0) {
-            JsonNode hitsArrayNode = hitsNode.get("hits");
-            if (hitsArrayNode != null && hitsArrayNode.isArray()) {
-              List<Event> events = new ArrayList<>();
-              Iterator<JsonNode> i = hitsArrayNode.elements();
-              while(i.hasNext()) {
-                JsonNode hit = i.next();
-                JsonNode source = hit.get("_source");
-                log.info(source.toString());
-                Event event = objectMapper.readValue(source.toString(), Event.class);
-                events.add(event);
-              }
-              page = new PageImpl<Event>(events, pageable, events.size());
-            }
+      JestResult result = jestClient.execute(search);
+      if (result != null && result.isSucceeded()) {
+        for (Event event : readHits(objectMapper.readTree(result.getJsonString()).get("hits"))) {
+          // phrase matching is looser than equality, so confirm each hit
+          if (eventIds.contains(event.getId())) {
+            existing.add(event.getId());
           }
         }
-                
       }
-    } 
+    }
     catch (IOException e) {
       log.error(e.getMessage(),e);
     }
+    return existing;
+  }
 
-    return page;
+  @Override
+  public Event save(Event event, String tenantId) {
+    throw new UnsupportedOperationException();
   }
 
   @Override
-  public Event findByTenantIdAndEventId(String tenantId, String eventId) {
-    Event event = null;
+  public List<Event> saveAll(Collection<Event> events, String tenantId) {
+    throw new UnsupportedOperationException();
+  }
+
+  private Page<Event> search(String tenantId, QueryBuilder query, Pageable pageable) {
+    
+    Page<Event> page = null;
+    
+    int offset = (pageable == null) ? 0 : pageable.getOffset();
+    int pagesize = (pageable == null) ? 1000 : pageable.getPageSize();
     
     SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-    searchSourceBuilder.query(QueryBuilders.matchPhraseQuery("id", eventId));    
+    searchSourceBuilder.query(query);
 
     Search search = new Search.Builder(searchSourceBuilder.toString())
     .addIndex(tenantId)
+    .setParameter("from", offset)
+    .setParameter(Parameters.SIZE, pagesize)
     .build();
     
     try {
       SearchResult result = jestClient.execute(search);
       if (result != null) {
-        List<Hit<Event, Void>> hits = result.getHits(Event.class);
-        if (hits != null && !hits.isEmpty()) {
-          List<Event> events = new LinkedList<Event>();
-          for (Hit<Event,Void> hit : hits) {
-            events.add(hit.source);
+        if (log.isDebugEnabled()) {
+          log.debug(result.getJsonString());
+        }
+        
+        JsonNode resultsNode = objectMapper.readTree(result.getJsonString());
+        if (resultsNode != null) {
+          JsonNode hitsNode = resultsNode.get("hits");
+          // hits.total is the size of the whole result, not of this page
+          long total = hitsNode.get("total").longValue();
+          if (total > 0) {
+            List<Event> events = readHits(hitsNode);
+            page = new PageImpl<Event>(events, pageable, total);
           }
-          event = events.get(0);
         }
       }
     } 
@@ -244,17 +343,25 @@ public class AwsElasticsearchReader implements Reader {
       log.error(e.getMessage(),e);
     }
 
-    return event;
+    return page;
   }
 
-  @Override
-  public Event save(Event event, String tenantId) {
-    throw new UnsupportedOperationException();
+  private List<Event> readHits(JsonNode hitsNode) throws IOException {
+    List<Event> events = new ArrayList<>();
+    JsonNode hitsArrayNode = (hitsNode == null) ? null : hitsNode.get("hits");
+    if (hitsArrayNode != null && hitsArrayNode.isArray()) {
+      Iterator<JsonNode> i = hitsArrayNode.elements();
+      while(i.hasNext()) {
+        JsonNode source = i.next().get("_source");
+        events.add(objectMapper.treeToValue(source, Event.class));
+      }
+    }
+    return events;
   }
 
-  @Override
-  public List<Event> saveAll(Collection<Event> events, String tenantId) {
-    throw new UnsupportedOperationException();
+  private static DateHistogramBuilder weeks() {
+    return AggregationBuilders.dateHistogram("weeks").field("eventTime")
+        .interval(DateHistogram.Interval.WEEK).format("yyyy-MM-dd").minDocCount(1);
   }
 
 }
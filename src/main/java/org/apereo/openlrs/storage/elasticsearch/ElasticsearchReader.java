@@ -3,22 +3,56 @@
  */
 package org.apereo.openlrs.storage.elasticsearch;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.EventStats;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQuery;
 import org.apereo.openlrs.storage.Reader;
+import org.apereo.openlrs.storage.stats.EventStatsBuilder;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.SearchContextMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.ResultsExtractor;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.SearchQuery;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * @author ggilbert
  *
@@ -27,51 +61,65 @@ import org.springframework.stereotype.Component;
 @Component("ElasticsearchReader")
 public class ElasticsearchReader implements Reader {
   
+  private static final long SCROLL_KEEP_ALIVE_MILLIS = 60000;
+  private static final int MAX_QUERY_PAGES = 10;
+  
   @Autowired private ElasticsearchEventRepository repository;
+  @Autowired private ElasticsearchOperations elasticsearchOperations;
+  @Autowired private Client client;
+  @Autowired private ObjectMapper objectMapper;
 
   @Override
   public Page<Event> findByTenantId(String tenantId, Pageable pageable) {
-    Page<Event> page = null;
     Page<EventElasticsearch> wrappedPageOfEvents = repository.findByTenantId(tenantId,pageable);
-    if (wrappedPageOfEvents != null && wrappedPageOfEvents.hasContent()) {
-      List<Event> events = new LinkedList<>();
-      for (EventElasticsearch ee : wrappedPageOfEvents.getContent()) {
-        events.add(ee.getEvent());
+    return toEventPage(wrappedPageOfEvents, pageable);
+  }
+
+  /**
+   * The cursor is an Elasticsearch scroll id. The 1.x client has no
+   * search_after, so deep reads use a scroll context that stays open for a
+   * minute between pages. The page size is fixed by the first request. A
+   * plain scroll rather than scan, whose size applies per shard and would
+   * return up to limit times the shard count per page.
+   */
+  @Override
+  public CursorPage findByTenantId(String tenantId, String cursor, int limit) {
+    TimeValue keepAlive = TimeValue.timeValueMillis(SCROLL_KEEP_ALIVE_MILLIS);
+    SearchResponse response;
+    try {
+      if (StringUtils.isBlank(cursor)) {
+        response = prepareSearch()
+          .setQuery(QueryBuilders.termQuery("tenantId", tenantId))
+          .setSize(limit)
+          .setScroll(keepAlive)
+          .execute().actionGet();
+      }
+      else {
+        response = client.prepareSearchScroll(cursor).setScroll(keepAlive).execute().actionGet();
       }
-      page = new PageImpl<>(events);
+    }
+    catch (SearchContextMissingException e) {
+      throw new IllegalArgumentException(String.format("Invalid or expired cursor %s", cursor), e);
     }
     
-    return page;
+    List<Event> events = new ArrayList<>();
+    for (SearchHit hit : response.getHits()) {
+      events.add(toEvent(hit));
+    }
+    
+    return new CursorPage(events, events.isEmpty() ? null : response.getScrollId());
   }
 
   @Override
   public Page<Event> findByTenantIdAndContext(String tenantId, String groupId, Pageable pageable) {
-    Page<Event> page = null;  
     Page<EventElasticsearch> wrappedPageOfEvents = repository.findByTenantIdAndEventGroupIdWhereGroupIdContains(tenantId, groupId, pageable);
-    if (wrappedPageOfEvents != null && wrappedPageOfEvents.hasContent()) {
-      List<Event> events = new LinkedList<>();
-      for (EventElasticsearch ee : wrappedPageOfEvents.getContent()) {
-        events.add(ee.getEvent());
-      }
-      page = new PageImpl<>(events);
-    }
-    
-    return page;
+    return toEventPage(wrappedPageOfEvents, pageable);
   }
 
   @Override
   public Page<Event> findByTenantIdAndUser(String tenantId, String user, Pageable pageable) {
-    Page<Event> page = null;
     Page<EventElasticsearch> wrappedPageOfEvents = repository.findByTenantIdAndEventActorId(tenantId, user, pageable);
-    if (wrappedPageOfEvents != null && wrappedPageOfEvents.hasContent()) {
-      List<Event> events = new LinkedList<>();
-      for (EventElasticsearch ee : wrappedPageOfEvents.getContent()) {
-        events.add(ee.getEvent());
-      }
-      page = new PageImpl<>(events);
-    }
-    
-    return page;
+    return toEventPage(wrappedPageOfEvents, pageable);
   }
 
   @Override
@@ -83,6 +131,155 @@ public class ElasticsearchReader implements Reader {
     return null;
   }
 
+  /**
+   * One search_type=count request with a weekly date_histogram and a terms
+   * aggregation on the actor id, so only buckets come back. Weeks start on
+   * Monday, UTC. The actor fields must be not_analyzed (see
+   * es/eventv2.mapping), which only applies to a newly created index.
+   */
+  @Override
+  public EventStats findStatsByTenantIdAndContext(String tenantId, String groupId) {
+    ElasticsearchPersistentEntity<?> entity = elasticsearchOperations.getElasticsearchConverter()
+        .getMappingContext().getPersistentEntity(EventElasticsearch.class);
+    SearchQuery searchQuery = new NativeSearchQueryBuilder()
+      .withIndices(entity.getIndexName())
+      .withTypes(entity.getIndexType())
+      .withSearchType(SearchType.COUNT)
+      // same match as findByTenantIdAndEventGroupIdWhereGroupIdContains
+      .withQuery(QueryBuilders.boolQuery()
+          .must(QueryBuilders.queryString(tenantId).field("tenantId"))
+          .must(QueryBuilders.queryString(groupId).field("event.group.@id")))
+      .addAggregation(weeks())
+      .addAggregation(AggregationBuilders.terms("students").field("event.actor.@id").size(0)
+          .subAggregation(weeks())
+          .subAggregation(AggregationBuilders.terms("names").field("event.actor.name").size(1)))
+      .build();
+    
+    return elasticsearchOperations.query(searchQuery, new ResultsExtractor<EventStats>() {
+      @Override
+      public EventStats extract(SearchResponse response) {
+        EventStatsBuilder builder = new EventStatsBuilder().total(response.getHits().getTotalHits());
+        Aggregations aggregations = response.getAggregations();
+        if (aggregations == null) {
+          return builder.build();
+        }
+        
+        DateHistogram weeks = aggregations.get("weeks");
+        for (DateHistogram.Bucket week : weeks.getBuckets()) {
+          builder.week(week.getKey(), week.getDocCount());
+        }
+        
+        Terms students = aggregations.get("students");
+        for (Terms.Bucket student : students.getBuckets()) {
+          Terms names = student.getAggregations().get("names");
+          String name = names.getBuckets().isEmpty() ? null : names.getBuckets().iterator().next().getKey();
+          DateHistogram studentWeeks = student.getAggregations().get("weeks");
+          long inWeeks = 0;
+          for (DateHistogram.Bucket week : studentWeeks.getBuckets()) {
+            builder.student(student.getKey(), name, week.getKey(), week.getDocCount());
+            inWeeks += week.getDocCount();
+          }
+          // events without an eventTime fall outside every week
+          builder.student(student.getKey(), name, null, student.getDocCount() - inWeeks);
+        }
+        return builder.build();
+      }
+    });
+  }
+
+  /**
+   * Only event.actor.@id is not_analyzed in eventv2.mapping, so the other
+   * fields are phrase matched and every hit is confirmed against the query.
+   * Hits that fail the check would leave the result short, so the query
+   * scrolls on until limit events match or the hits run out, reading at
+   * most MAX_QUERY_PAGES pages of limit hits; past that the result is short.
+   */
+  @Override
+  public List<Event> findByQuery(String tenantId, EventQuery eventQuery) {
+    BoolQueryBuilder query = QueryBuilders.boolQuery().must(QueryBuilders.termQuery("tenantId", tenantId));
+    if (eventQuery.getActor() != null) {
+      query.must(QueryBuilders.termQuery("event.actor.@id", eventQuery.getActor()));
+    }
+    if (eventQuery.getGroup() != null) {
+      query.must(QueryBuilders.matchPhraseQuery("event.group.@id", eventQuery.getGroup()));
+    }
+    if (eventQuery.getAction() != null) {
+      query.must(QueryBuilders.matchPhraseQuery("event.action", eventQuery.getAction()));
+    }
+    if (eventQuery.getObject() != null) {
+      query.must(QueryBuilders.matchPhraseQuery("event.object.@id", eventQuery.getObject()));
+    }
+    String timeField = (eventQuery.getTimeField() == EventQuery.TimeField.EVENT_TIME) ? "event.eventTime" : "event.storedTime";
+    if (eventQuery.getSince() != null || eventQuery.getUntil() != null) {
+      RangeQueryBuilder range = QueryBuilders.rangeQuery(timeField);
+      if (eventQuery.getSince() != null) {
+        range.gt(eventQuery.getSince().toString());
+      }
+      if (eventQuery.getUntil() != null) {
+        range.lte(eventQuery.getUntil().toString());
+      }
+      query.must(range);
+    }
+    
+    int limit = eventQuery.getLimit();
+    TimeValue keepAlive = TimeValue.timeValueMillis(SCROLL_KEEP_ALIVE_MILLIS);
+    SearchResponse response = prepareSearch()
+        .setQuery(query)
+        .addSort(SortBuilders.fieldSort(timeField).order(eventQuery.isAscending() ? SortOrder.ASC : SortOrder.DESC).ignoreUnmapped(true))
+        .setSize(limit)
+        .setScroll(keepAlive)
+        .execute().actionGet();
+    
+    List<Event> events = new ArrayList<>();
+    try {
+      for (int page = 1; ; page++) {
+        SearchHit[] hits = response.getHits().getHits();
+        for (SearchHit hit : hits) {
+          Event event = toEvent(hit);
+          // phrase matching is looser than equality, so confirm each hit
+          if (event != null && matchesExactly(event, eventQuery) && events.size() < limit) {
+            events.add(event);
+          }
+        }
+        if (events.size() >= limit || hits.length < limit || page >= MAX_QUERY_PAGES) {
+          break;
+        }
+        response = client.prepareSearchScroll(response.getScrollId()).setScroll(keepAlive).execute().actionGet();
+      }
+    }
+    finally {
+      client.prepareClearScroll().addScrollId(response.getScrollId()).execute();
+    }
+    return events;
+  }
+
+  @Override
+  public Set<String> findExistingEventIds(String tenantId, Collection<String> eventIds) {
+    Set<String> existing = new HashSet<>();
+    if (eventIds == null || eventIds.isEmpty()) {
+      return existing;
+    }
+    
+    BoolQueryBuilder anyId = QueryBuilders.boolQuery().minimumNumberShouldMatch(1);
+    for (String eventId : eventIds) {
+      anyId.should(QueryBuilders.matchPhraseQuery("event.id", eventId));
+    }
+    SearchQuery searchQuery = new NativeSearchQueryBuilder()
+        .withQuery(QueryBuilders.boolQuery()
+            .must(QueryBuilders.termQuery("tenantId", tenantId))
+            .must(anyId))
+        .withPageable(new PageRequest(0, eventIds.size()))
+        .build();
+    
+    for (EventElasticsearch ee : elasticsearchOperations.queryForList(searchQuery, EventElasticsearch.class)) {
+      // phrase matching is looser than equality, so confirm each hit
+      if (ee.getEvent() != null && eventIds.contains(ee.getEvent().getId())) {
+        existing.add(ee.getEvent().getId());
+      }
+    }
+    return existing;
+  }
+
   @Override
   public Event save(Event event, String tenantId) {
     if (StringUtils.isBlank(event.getId())) {
@@ -98,12 +295,60 @@ public class ElasticsearchReader implements Reader {
     List<Event> savedEvents = null;
     
     if (events != null) {
-      savedEvents =new ArrayList<>();
+      savedEvents = new ArrayList<>(events.size());
+      List<IndexQuery> indexQueries = new ArrayList<>(events.size());
       for (Event e : events) {
-        savedEvents.add(this.save(e, tenantId));
+        if (StringUtils.isBlank(e.getId())) {
+          e.setId(UUID.randomUUID().toString());
+        }
+        indexQueries.add(new IndexQueryBuilder().withObject(new EventElasticsearch(tenantId, e)).build());
+        savedEvents.add(e);
+      }
+      if (!indexQueries.isEmpty()) {
+        // one _bulk request and one refresh, where repository.save does both per event
+        elasticsearchOperations.bulkIndex(indexQueries);
+        elasticsearchOperations.refresh(EventElasticsearch.class, true);
       }
     }
     return savedEvents;
   }
 
+  private SearchRequestBuilder prepareSearch() {
+    ElasticsearchPersistentEntity<?> entity = elasticsearchOperations.getElasticsearchConverter()
+        .getMappingContext().getPersistentEntity(EventElasticsearch.class);
+    return client.prepareSearch(entity.getIndexName()).setTypes(entity.getIndexType());
+  }
+
+  private Event toEvent(SearchHit hit) {
+    try {
+      return objectMapper.readValue(hit.sourceAsString(), EventElasticsearch.class).getEvent();
+    }
+    catch (IOException e) {
+      throw new ElasticsearchException("Failed to map scroll hit", e);
+    }
+  }
+
+  private static boolean matchesExactly(Event event, EventQuery eventQuery) {
+    return (eventQuery.getActor() == null || (event.getActor() != null && eventQuery.getActor().equals(event.getActor().getId())))
+        && (eventQuery.getGroup() == null || (event.getGroup() != null && eventQuery.getGroup().equals(event.getGroup().getId())))
+        && (eventQuery.getAction() == null || eventQuery.getAction().equals(event.getAction()))
+        && (eventQuery.getObject() == null || (event.getObject() != null && eventQuery.getObject().equals(event.getObject().getId())));
+  }
+
+  private static DateHistogramBuilder weeks() {
+    return AggregationBuilders.dateHistogram("weeks").field("event.eventTime")
+        .interval(DateHistogram.Interval.WEEK).format("yyyy-MM-dd").minDocCount(1);
+  }
+
+  private Page<Event> toEventPage(Page<EventElasticsearch> wrappedPageOfEvents, Pageable pageable) {
+    if (wrappedPageOfEvents == null) {
+      return null;
+    }
+    List<Event> events = new ArrayList<>(wrappedPageOfEvents.getNumberOfElements());
+    for (EventElasticsearch ee : wrappedPageOfEvents.getContent()) {
+      events.add(ee.getEvent());
+    }
+    return new PageImpl<>(events, pageable, wrappedPageOfEvents.getTotalElements());
+  }
+
 }
@@ -10,6 +10,7 @@ import javax.persistence.Id;
 
 import org.apereo.openlrs.model.event.Event;
 import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Mapping;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
@@ -22,6 +23,7 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
  *
  */
 @Document(indexName="openlrs_eventv2")
+@Mapping(mappingPath="/es/eventv2.mapping")
 @JsonInclude(Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown=true)
 public class EventElasticsearch implements Serializable {
@@ -41,6 +43,18 @@ public class EventElasticsearch implements Serializable {
     this.tenantId = tenantId;
     this.event = event;
   }
+
+  @JsonProperty("rawStatement")
+  private void setRawStatement(String rawStatement) {
+    // Event does not serialize its raw statement, so it travels here
+    if (event != null) {
+      event.setRawStatement(rawStatement);
+    }
+  }
+
+  public String getRawStatement() {
+    return event == null ? null : event.getRawStatement();
+  }
   
   public String getId() {
     return id;
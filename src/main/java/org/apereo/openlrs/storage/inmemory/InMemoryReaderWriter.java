@@ -5,16 +5,27 @@ package org.apereo.openlrs.storage.inmemory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.EventStats;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQuery;
 import org.apereo.openlrs.storage.Reader;
 import org.apereo.openlrs.storage.Writer;
+import org.apereo.openlrs.storage.stats.EventStatsBuilder;
+import org.joda.time.DateTime;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -29,73 +40,96 @@ import org.springframework.stereotype.Component;
 @Component("InMemoryReaderWriter")
 public class InMemoryReaderWriter implements Writer, Reader {
 
-  private static Map<String, List<Event>> store = new HashMap<String, List<Event>>();
+  private static ConcurrentMap<String, TenantEvents> store = new ConcurrentHashMap<String, TenantEvents>();
 
   @Override
   public Page<Event> findByTenantId(String tenantId, Pageable pageable) {
-    List<Event> events = store.get(tenantId);
-    if (events == null) return null;
-        
-    return new PageImpl<>(events, pageable, events.size());
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return null;
+
+    return tenantEvents.findAll(pageable);
+  }
+
+  @Override
+  public CursorPage findByTenantId(String tenantId, String cursor, int limit) {
+    // the cursor is simply the position in the tenant's append-only event list
+    int from = 0;
+    if (StringUtils.isNotBlank(cursor)) {
+      try {
+        from = Integer.parseInt(cursor);
+      }
+      catch (NumberFormatException e) {
+        throw new IllegalArgumentException(String.format("Invalid cursor %s", cursor));
+      }
+      if (from < 0) {
+        throw new IllegalArgumentException(String.format("Invalid cursor %s", cursor));
+      }
+    }
+
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return new CursorPage(new ArrayList<Event>(), null);
+
+    return tenantEvents.findAfter(from, limit);
   }
 
   @Override
   public Page<Event> findByTenantIdAndContext(String tenantId, String contextId, Pageable pageable) {
-    List<Event> events = store.get(tenantId);
-    if (events == null) return null;
-    
-    List<Event> eventResultList = events.stream()
-    .filter(event -> (event.getGroup() != null && event.getGroup().getId().contains(contextId)))//event.getGroup().getId().equals(contextId)))
-    .collect(Collectors.toList());
-    
-    if (eventResultList == null) return null;
-    
-    return new PageImpl<>(eventResultList, pageable, eventResultList.size());
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return null;
+
+    return tenantEvents.findByGroup(contextId, pageable);
   }
-  
+
   @Override
   public Page<Event> findByTenantIdAndUser(String tenantId, String user, Pageable pageable) {
-    List<Event> events = store.get(tenantId);
-    if (events == null) return null;
-    
-    List<Event> eventResultList = events.stream()
-    .filter(event -> (event.getActor() != null && event.getActor().getId().equals(user)))
-    .collect(Collectors.toList());
-    
-    if (eventResultList == null) return null;
-    
-    return new PageImpl<>(eventResultList, pageable, eventResultList.size());
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return null;
+
+    return tenantEvents.findByActor(user, pageable);
   }
 
 
   @Override
   public Event findByTenantIdAndEventId(String tenantId, String eventId) {
-    List<Event> events = store.get(tenantId);
-    if (events == null) return null;
-    
-    List<Event> eventResultList = events.stream()
-    .filter(event -> event.getId().equals(eventId))
-    .collect(Collectors.toList());
-
-    
-    return (eventResultList != null && eventResultList.size() >= 1) ? eventResultList.get(0) : null;
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return null;
+
+    return tenantEvents.findById(eventId);
+  }
+
+  @Override
+  public EventStats findStatsByTenantIdAndContext(String tenantId, String contextId) {
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return new EventStatsBuilder().build();
+
+    return tenantEvents.statsByGroup(contextId);
+  }
+
+  @Override
+  public List<Event> findByQuery(String tenantId, EventQuery query) {
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return new ArrayList<Event>();
+
+    return tenantEvents.findByQuery(query);
+  }
+
+  @Override
+  public Set<String> findExistingEventIds(String tenantId, Collection<String> eventIds) {
+    TenantEvents tenantEvents = store.get(tenantId);
+    if (tenantEvents == null) return new HashSet<String>();
+
+    return tenantEvents.findExistingIds(eventIds);
   }
 
   @Override
   public Event save(Event event, String tenantId) {
-    
+
     if (event == null || StringUtils.isBlank(tenantId)) {
       throw new IllegalArgumentException("Event or Tenant cannot be null");
     }
-    
-    List<Event> events = store.get(tenantId);
-    
-    if (events == null) {
-      events = new LinkedList<Event>();
-    }
-    events.add(event);
-    store.put(tenantId, events);
-    
+
+    store.computeIfAbsent(tenantId, k -> new TenantEvents()).add(Collections.singletonList(event));
+
     return event;
   }
 
@@ -103,12 +137,270 @@ public class InMemoryReaderWriter implements Writer, Reader {
   public List<Event> saveAll(Collection<Event> events, String tenantId) {
     List<Event> savedEvents = null;
     if (events != null && !events.isEmpty()) {
-      savedEvents = new ArrayList<Event>();
-      for (Event e : events) {
-        savedEvents.add(this.save(e, tenantId));
+      if (StringUtils.isBlank(tenantId) || events.contains(null)) {
+        throw new IllegalArgumentException("Event or Tenant cannot be null");
       }
+
+      store.computeIfAbsent(tenantId, k -> new TenantEvents()).add(events);
+      savedEvents = new ArrayList<Event>(events);
     }
     return savedEvents;
   }
 
+  /**
+   * The events of a single tenant in arrival order, plus hash indexes
+   * on event id, actor id and group id. The actor and group indexes hold
+   * positions in the primary list so results keep arrival order without
+   * a sort. Readers share the lock, writers hold it exclusively.
+   */
+  private static class TenantEvents {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Event> events = new ArrayList<>();
+    private final Map<String, Event> eventsById = new HashMap<>();
+    private final Map<String, List<Integer>> positionsByActor = new HashMap<>();
+    private final Map<String, List<Integer>> positionsByGroup = new HashMap<>();
+
+    void add(Collection<Event> newEvents) {
+      lock.writeLock().lock();
+      try {
+        for (Event event : newEvents) {
+          int position = events.size();
+          events.add(event);
+
+          if (event.getId() != null) {
+            // first write wins, same as the linear scan it replaces
+            eventsById.putIfAbsent(event.getId(), event);
+          }
+          if (event.getActor() != null && event.getActor().getId() != null) {
+            positionsByActor.computeIfAbsent(event.getActor().getId(), k -> new ArrayList<>()).add(position);
+          }
+          if (event.getGroup() != null && event.getGroup().getId() != null) {
+            positionsByGroup.computeIfAbsent(event.getGroup().getId(), k -> new ArrayList<>()).add(position);
+          }
+        }
+      }
+      finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    Event findById(String eventId) {
+      lock.readLock().lock();
+      try {
+        return eventsById.get(eventId);
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    Set<String> findExistingIds(Collection<String> eventIds) {
+      lock.readLock().lock();
+      try {
+        Set<String> existing = new HashSet<>();
+        for (String eventId : eventIds) {
+          if (eventsById.containsKey(eventId)) {
+            existing.add(eventId);
+          }
+        }
+        return existing;
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    Page<Event> findAll(Pageable pageable) {
+      lock.readLock().lock();
+      try {
+        int total = events.size();
+        int from = from(pageable, total);
+        int to = to(pageable, from, total);
+        return new PageImpl<>(new ArrayList<>(events.subList(from, to)), pageable, total);
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    CursorPage findAfter(int from, int limit) {
+      lock.readLock().lock();
+      try {
+        int total = events.size();
+        int start = Math.min(from, total);
+        int end = (int) Math.min((long) start + limit, total);
+        String next = (end < total) ? String.valueOf(end) : null;
+        return new CursorPage(new ArrayList<>(events.subList(start, end)), next);
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    Page<Event> findByActor(String actorId, Pageable pageable) {
+      lock.readLock().lock();
+      try {
+        return resolve(positionsByActor.get(actorId), pageable);
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    /**
+     * Group ids are matched with "contains" semantics (as the Mongo and
+     * Elasticsearch readers do), so the scan is over the distinct group
+     * ids of the tenant rather than over its events.
+     */
+    Page<Event> findByGroup(String contextId, Pageable pageable) {
+      lock.readLock().lock();
+      try {
+        List<Integer> exact = positionsByGroup.get(contextId);
+        List<Integer> positions = null;
+        for (Map.Entry<String, List<Integer>> entry : positionsByGroup.entrySet()) {
+          if (entry.getValue() != exact && entry.getKey().contains(contextId)) {
+            if (positions == null) {
+              positions = new ArrayList<>();
+              if (exact != null) {
+                positions.addAll(exact);
+              }
+            }
+            positions.addAll(entry.getValue());
+          }
+        }
+
+        if (positions == null) {
+          return resolve(exact, pageable);
+        }
+        Collections.sort(positions);
+        return resolve(positions, pageable);
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    /**
+     * Scans the narrower of the actor and group indexes when either is
+     * part of the query, otherwise every event, then sorts the matches.
+     */
+    List<Event> findByQuery(EventQuery query) {
+      lock.readLock().lock();
+      try {
+        List<Integer> candidates = null;
+        if (query.getActor() != null) {
+          candidates = positionsByActor.getOrDefault(query.getActor(), Collections.<Integer>emptyList());
+        }
+        if (query.getGroup() != null) {
+          List<Integer> inGroup = positionsByGroup.getOrDefault(query.getGroup(), Collections.<Integer>emptyList());
+          if (candidates == null || inGroup.size() < candidates.size()) {
+            candidates = inGroup;
+          }
+        }
+
+        List<Event> matches = new ArrayList<>();
+        if (candidates == null) {
+          for (Event event : events) {
+            if (matches(event, query)) {
+              matches.add(event);
+            }
+          }
+        }
+        else {
+          for (Integer position : candidates) {
+            Event event = events.get(position);
+            if (matches(event, query)) {
+              matches.add(event);
+            }
+          }
+        }
+
+        Comparator<Event> order = Comparator.comparing((Event event) -> time(event, query),
+            Comparator.nullsLast(Comparator.<DateTime>naturalOrder()));
+        matches.sort(query.isAscending() ? order : order.reversed());
+        return new ArrayList<>(matches.subList(0, Math.min(query.getLimit(), matches.size())));
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private static boolean matches(Event event, EventQuery query) {
+      if (query.getActor() != null && (event.getActor() == null || !query.getActor().equals(event.getActor().getId()))) {
+        return false;
+      }
+      if (query.getGroup() != null && (event.getGroup() == null || !query.getGroup().equals(event.getGroup().getId()))) {
+        return false;
+      }
+      if (query.getAction() != null && !query.getAction().equals(event.getAction())) {
+        return false;
+      }
+      if (query.getObject() != null && (event.getObject() == null || !query.getObject().equals(event.getObject().getId()))) {
+        return false;
+      }
+      if (query.getSince() != null || query.getUntil() != null) {
+        DateTime time = time(event, query);
+        if (time == null
+            || (query.getSince() != null && !time.isAfter(query.getSince()))
+            || (query.getUntil() != null && time.isAfter(query.getUntil()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static DateTime time(Event event, EventQuery query) {
+      return (query.getTimeField() == EventQuery.TimeField.EVENT_TIME) ? event.getEventTime() : event.getStoredTime();
+    }
+
+    EventStats statsByGroup(String contextId) {
+      lock.readLock().lock();
+      try {
+        EventStatsBuilder builder = new EventStatsBuilder();
+        for (Map.Entry<String, List<Integer>> entry : positionsByGroup.entrySet()) {
+          if (entry.getKey().contains(contextId)) {
+            for (Integer position : entry.getValue()) {
+              Event event = events.get(position);
+              String week = (event.getEventTime() == null) ? null : EventStatsBuilder.week(event.getEventTime());
+              builder.total(1);
+              if (week != null) {
+                builder.week(week, 1);
+              }
+              if (event.getActor() != null && event.getActor().getId() != null) {
+                builder.student(event.getActor().getId(), event.getActor().getName(), week, 1);
+              }
+            }
+          }
+        }
+        return builder.build();
+      }
+      finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private Page<Event> resolve(List<Integer> positions, Pageable pageable) {
+      if (positions == null) {
+        return new PageImpl<>(new ArrayList<Event>(), pageable, 0);
+      }
+      int total = positions.size();
+      int from = from(pageable, total);
+      int to = to(pageable, from, total);
+      List<Event> resolved = new ArrayList<>(to - from);
+      for (Integer position : positions.subList(from, to)) {
+        resolved.add(events.get(position));
+      }
+      return new PageImpl<>(resolved, pageable, total);
+    }
+
+    private static int from(Pageable pageable, int total) {
+      return (pageable == null) ? 0 : Math.min(pageable.getOffset(), total);
+    }
+
+    private static int to(Pageable pageable, int from, int total) {
+      return (pageable == null) ? total : (int) Math.min((long) from + pageable.getPageSize(), total);
+    }
+  }
+
 }
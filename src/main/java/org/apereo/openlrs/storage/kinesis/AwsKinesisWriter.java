@@ -18,21 +18,32 @@ package org.apereo.openlrs.storage.kinesis;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.log4j.Logger;
 import org.apereo.openlrs.model.event.Event;
 import org.apereo.openlrs.storage.Writer;
+import org.apereo.openlrs.utils.JsonUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
-import com.amazonaws.services.kinesis.model.PutRecordRequest;
-import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 /**
+ * Writes events to a Kinesis stream with PutRecords. A batch is split
+ * into requests of at most 500 records and 5 MB, and only the records a
+ * request reports as failed are sent again, with jittered exponential
+ * backoff, until maxAttempts is reached.
+ * 
  * @author ggilbert
  *
  */
@@ -42,27 +53,35 @@ public class AwsKinesisWriter implements Writer {
   
   private static Logger log = Logger.getLogger(AwsKinesisWriter.class);
   
+  /** PutRecords limits, per call and per record */
+  private static final int MAX_RECORDS_PER_REQUEST = 500;
+  private static final int MAX_BYTES_PER_REQUEST = 5 * 1024 * 1024;
+  private static final int MAX_BYTES_PER_RECORD = 1024 * 1024;
+  
   @Autowired private AmazonKinesisClient kinesisClient;
 
   @Value("${aws.kinesis.stream}") 
   private String stream;
+  
+  @Value("${aws.kinesis.partitionKey:TENANT}")
+  private PartitionKeyStrategy partitionKeyStrategy;
+  
+  @Value("${aws.kinesis.maxAttempts:5}")
+  private int maxAttempts;
+  
+  @Value("${aws.kinesis.backoffMillis:100}")
+  private long backoffMillis;
+  
+  @Value("${aws.kinesis.maxBackoffMillis:5000}")
+  private long maxBackoffMillis;
 
   @Override
   public Event save(Event event, String tenantId) {
     if (event == null || tenantId == null) {
-      log.error(event.toString());
       throw new IllegalArgumentException("Event or Tenant cannot be null");
     }
     
-    PutRecordRequest putRecordRequest = new PutRecordRequest();
-    putRecordRequest.setStreamName(stream);
-    putRecordRequest.setPartitionKey(tenantId);
-    putRecordRequest.setData(ByteBuffer.wrap(event.toJSON().getBytes()));
-    PutRecordResult result = kinesisClient.putRecord(putRecordRequest);
-    
-    log.debug(String.format("Successfully putrecord, partition key : %s, ShardID: %s, Sequence Number: %s",
-        putRecordRequest.getPartitionKey(),result.getShardId(),result.getSequenceNumber()));
-
+    saveAll(Collections.singletonList(event), tenantId);
     return event;
   }
 
@@ -71,13 +90,92 @@ public class AwsKinesisWriter implements Writer {
     List<Event> savedEvents = null;
     
     if (events != null && !events.isEmpty()) {
-      savedEvents = new ArrayList<Event>(events.size());
-      for (Event e : events) {
-        savedEvents.add(this.save(e, tenantId));
+      if (tenantId == null || events.contains(null)) {
+        throw new IllegalArgumentException("Event or Tenant cannot be null");
+      }
+      
+      savedEvents = new ArrayList<Event>(events);
+      List<PutRecordsRequestEntry> entries = new ArrayList<PutRecordsRequestEntry>();
+      int requestBytes = 0;
+      for (Event e : savedEvents) {
+        PutRecordsRequestEntry entry = new PutRecordsRequestEntry();
+        entry.setPartitionKey(partitionKeyStrategy.partitionKey(tenantId, e));
+        byte[] data = toBytes(e);
+        int entryBytes = data.length + entry.getPartitionKey().length();
+        if (entryBytes > MAX_BYTES_PER_RECORD) {
+          throw new IllegalArgumentException(String.format("Event %s is larger than a Kinesis record", e.getId()));
+        }
+        entry.setData(ByteBuffer.wrap(data));
+        
+        if (entries.size() == MAX_RECORDS_PER_REQUEST || requestBytes + entryBytes > MAX_BYTES_PER_REQUEST) {
+          putRecords(entries);
+          entries = new ArrayList<PutRecordsRequestEntry>();
+          requestBytes = 0;
+        }
+        entries.add(entry);
+        requestBytes += entryBytes;
       }
+      putRecords(entries);
     }
     
     return savedEvents;
   }
+  
+  private void putRecords(List<PutRecordsRequestEntry> entries) {
+    List<PutRecordsRequestEntry> pending = entries;
+    for (int attempt = 1; ; attempt++) {
+      PutRecordsRequest putRecordsRequest = new PutRecordsRequest();
+      putRecordsRequest.setStreamName(stream);
+      putRecordsRequest.setRecords(pending);
+      PutRecordsResult result = kinesisClient.putRecords(putRecordsRequest);
+      
+      if (result.getFailedRecordCount() == null || result.getFailedRecordCount() == 0) {
+        log.debug(String.format("Successfully putrecords, count: %d, attempt: %d", pending.size(), attempt));
+        return;
+      }
+      
+      // PutRecords is not atomic, results line up with the request entries
+      List<PutRecordsRequestEntry> failed = new ArrayList<PutRecordsRequestEntry>(result.getFailedRecordCount());
+      List<PutRecordsResultEntry> resultEntries = result.getRecords();
+      String errorCode = null;
+      for (int i = 0; i < resultEntries.size(); i++) {
+        if (resultEntries.get(i).getErrorCode() != null) {
+          failed.add(pending.get(i));
+          errorCode = resultEntries.get(i).getErrorCode();
+        }
+      }
+      
+      if (attempt >= maxAttempts) {
+        log.error(String.format("Failed to put %d of %d records after %d attempts, last error: %s",
+            failed.size(), entries.size(), attempt, errorCode));
+        throw new RuntimeException(String.format("Failed to put %d of %d records", failed.size(), entries.size()));
+      }
+      
+      log.warn(String.format("Retrying %d failed records, attempt %d, error: %s", failed.size(), attempt, errorCode));
+      pending = failed;
+      backoff(attempt);
+    }
+  }
+  
+  private byte[] toBytes(Event event) {
+    try {
+      return JsonUtils.toJodaJsonBytes(event);
+    }
+    catch (JsonProcessingException e) {
+      throw new IllegalArgumentException(String.format("Unable to serialize event %s", event.getId()), e);
+    }
+  }
+  
+  /** full jitter: a random wait up to the capped exponential delay */
+  private void backoff(int attempt) {
+    long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while retrying Kinesis records", e);
+    }
+  }
 
 }
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.kinesis;
+
+import org.apereo.openlrs.model.event.Event;
+
+/**
+ * How {@link AwsKinesisWriter} picks the partition key, and so the shard,
+ * for an event. Set with aws.kinesis.partitionKey.
+ */
+public enum PartitionKeyStrategy {
+
+  /** every event of a tenant goes to the same shard, keeping tenant order */
+  TENANT {
+    @Override
+    public String partitionKey(String tenantId, Event event) {
+      return tenantId;
+    }
+  },
+
+  /** spreads a tenant over shards by actor, keeping order per learner */
+  TENANT_ACTOR {
+    @Override
+    public String partitionKey(String tenantId, Event event) {
+      if (event.getActor() == null || event.getActor().getId() == null) {
+        return tenantId;
+      }
+      return tenantId + ":" + Integer.toHexString(event.getActor().getId().hashCode());
+    }
+  };
+
+  public abstract String partitionKey(String tenantId, Event event);
+
+}
@@ -4,20 +4,46 @@
 package org.apereo.openlrs.storage.mongo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.EventStats;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQuery;
 import org.apereo.openlrs.storage.Reader;
+import org.apereo.openlrs.storage.stats.EventStatsBuilder;
+import org.bson.types.ObjectId;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Component;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
 /**
  * @author ggilbert
  *
@@ -26,52 +52,84 @@ import org.springframework.stereotype.Component;
 @Component("MongoReader")
 public class MongoReader implements Reader {
   
+  /** cursor time for events without a storedTime, which sort before the rest */
+  private static final String NULL_STORED_TIME = "null";
+  
   @Autowired private MongoEventRepository mongoEventRepository;
+  @Autowired private MongoTemplate mongoTemplate;
+  
+  @PostConstruct
+  public void ensureIndexes() {
+    // backs the keyset scan in findByTenantId(tenantId, cursor, limit)
+    mongoTemplate.indexOps(EventMongo.class).ensureIndex(
+        new Index().on("tenantId", Direction.ASC).on("event.storedTime", Direction.ASC).on("_id", Direction.ASC)
+          .named("tenant_stored"));
+    // backs actor filtered findByQuery, the common xAPI statement filter
+    mongoTemplate.indexOps(EventMongo.class).ensureIndex(
+        new Index().on("tenantId", Direction.ASC).on("event.actor._id", Direction.ASC).on("event.storedTime", Direction.ASC)
+          .named("tenant_actor_stored"));
+  }
 
   @Override
   public Page<Event> findByTenantId(String tenantId, Pageable pageable) {
-    Page<Event> events = null;
     Page<EventMongo> eventMongos = mongoEventRepository.findByTenantId(tenantId, pageable);
-    
-    if (eventMongos != null && eventMongos.hasContent()) {
-      List<Event> eventList = new ArrayList<>();
-      for (EventMongo em : eventMongos.getContent()) {
-        eventList.add(em.getEvent());
+    return toEventPage(eventMongos, pageable);
+  }
+
+  @Override
+  public CursorPage findByTenantId(String tenantId, String cursor, int limit) {
+    // keyset pagination on (event.storedTime, _id): each page is an index range
+    // scan, where skip/limit would have to walk every earlier document. Events
+    // stored without a storedTime sort first and are paged by _id alone.
+    Criteria criteria = Criteria.where("tenantId").is(tenantId);
+    if (StringUtils.isNotBlank(cursor)) {
+      String [] parts = StringUtils.split(cursor, '_');
+      if (parts.length != 2 || !(NULL_STORED_TIME.equals(parts[0]) || NumberUtils.isDigits(parts[0])) || !ObjectId.isValid(parts[1])) {
+        throw new IllegalArgumentException(String.format("Invalid cursor %s", cursor));
+      }
+      ObjectId id = new ObjectId(parts[1]);
+      if (NULL_STORED_TIME.equals(parts[0])) {
+        criteria = criteria.orOperator(
+            Criteria.where("event.storedTime").ne(null),
+            Criteria.where("event.storedTime").is(null).and("id").gt(id));
+      }
+      else {
+        Date storedTime = new Date(Long.parseLong(parts[0]));
+        criteria = criteria.orOperator(
+            Criteria.where("event.storedTime").gt(storedTime),
+            Criteria.where("event.storedTime").is(storedTime).and("id").gt(id));
       }
-      
-      events = new PageImpl<>(eventList);
     }
-    return events;
+    
+    Query query = new Query(criteria)
+      .with(new Sort(Direction.ASC, "event.storedTime", "id"))
+      .limit(limit);
+    List<EventMongo> eventMongos = mongoTemplate.find(query, EventMongo.class);
+    
+    List<Event> eventList = new ArrayList<>(eventMongos.size());
+    for (EventMongo em : eventMongos) {
+      eventList.add(em.getEvent());
+    }
+    
+    String next = null;
+    if (!eventMongos.isEmpty() && eventMongos.size() == limit) {
+      EventMongo last = eventMongos.get(eventMongos.size() - 1);
+      DateTime storedTime = last.getEvent().getStoredTime();
+      next = String.format("%s_%s", (storedTime == null) ? NULL_STORED_TIME : String.valueOf(storedTime.getMillis()), last.getId());
+    }
+    return new CursorPage(eventList, next);
   }
 
   @Override
   public Page<Event> findByTenantIdAndContext(String tenantId, String context, Pageable pageable) {
-    Page<Event> events = null;
     Page<EventMongo> eventMongos = mongoEventRepository.findByTenantIdAndEventGroupIdIn(tenantId, context, pageable);
-    if (eventMongos != null && eventMongos.hasContent()) {
-      List<Event> eventList = new ArrayList<>();
-      for (EventMongo em : eventMongos.getContent()) {
-        eventList.add(em.getEvent());
-      }
-      
-      events = new PageImpl<>(eventList);
-    }
-    return events;
+    return toEventPage(eventMongos, pageable);
   }
 
   @Override
   public Page<Event> findByTenantIdAndUser(String tenantId, String user, Pageable pageable) {
-    Page<Event> events = null;
     Page<EventMongo> eventMongos = mongoEventRepository.findByTenantIdAndEventActorId(tenantId, user, pageable);
-    if (eventMongos != null && eventMongos.hasContent()) {
-      List<Event> eventList = new ArrayList<>();
-      for (EventMongo em : eventMongos.getContent()) {
-        eventList.add(em.getEvent());
-      }
-      
-      events = new PageImpl<>(eventList);
-    }
-    return events;
+    return toEventPage(eventMongos, pageable);
   }
 
   @Override
@@ -84,6 +142,115 @@ public class MongoReader implements Reader {
     return event;
   }
 
+  /**
+   * Aggregation pipelines grouped per actor and day, so only the counts
+   * cross the wire; days are folded into Monday-based weeks here. Mongo date
+   * operators work in UTC, so events without an eventTime are grouped per
+   * actor in their own pipeline and count towards the totals but no week.
+   * Nested ids are stored as _id, hence the raw field names. The course is
+   * matched as a substring of the group id, like findByTenantIdAndContext.
+   */
+  @Override
+  public EventStats findStatsByTenantIdAndContext(String tenantId, String context) {
+    DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(EventMongo.class));
+    List<DBObject> timed = Arrays.<DBObject>asList(
+        new BasicDBObject("$match", contextMatch(tenantId, context)
+            .append("event.eventTime", new BasicDBObject("$ne", null))),
+        new BasicDBObject("$project", new BasicDBObject("actorId", "$event.actor._id")
+            .append("actorName", "$event.actor.name")
+            .append("year", new BasicDBObject("$year", "$event.eventTime"))
+            .append("day", new BasicDBObject("$dayOfYear", "$event.eventTime"))),
+        new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("actorId", "$actorId").append("year", "$year").append("day", "$day"))
+            .append("count", new BasicDBObject("$sum", 1))
+            .append("actorName", new BasicDBObject("$last", "$actorName"))));
+    List<DBObject> untimed = Arrays.<DBObject>asList(
+        new BasicDBObject("$match", contextMatch(tenantId, context)
+            .append("event.eventTime", null)),
+        new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("actorId", "$event.actor._id"))
+            .append("count", new BasicDBObject("$sum", 1))
+            .append("actorName", new BasicDBObject("$last", "$event.actor.name"))));
+    
+    EventStatsBuilder builder = new EventStatsBuilder();
+    for (DBObject row : collection.aggregate(timed).results()) {
+      DBObject key = (DBObject) row.get("_id");
+      long count = ((Number) row.get("count")).longValue();
+      String week = EventStatsBuilder.week(new LocalDate(((Number) key.get("year")).intValue(), 1, 1)
+          .withDayOfYear(((Number) key.get("day")).intValue()));
+      builder.total(count).week(week, count);
+      if (key.get("actorId") != null) {
+        builder.student(String.valueOf(key.get("actorId")), (String) row.get("actorName"), week, count);
+      }
+    }
+    for (DBObject row : collection.aggregate(untimed).results()) {
+      DBObject key = (DBObject) row.get("_id");
+      long count = ((Number) row.get("count")).longValue();
+      builder.total(count);
+      if (key.get("actorId") != null) {
+        builder.student(String.valueOf(key.get("actorId")), (String) row.get("actorName"), null, count);
+      }
+    }
+    return builder.build();
+  }
+
+  private BasicDBObject contextMatch(String tenantId, String context) {
+    return new BasicDBObject("tenantId", tenantId)
+        .append("event.group._id", new BasicDBObject("$regex", Pattern.quote(context)));
+  }
+
+  @Override
+  public List<Event> findByQuery(String tenantId, EventQuery eventQuery) {
+    // typed find, so the mapper turns the nested id paths into _id
+    Criteria criteria = Criteria.where("tenantId").is(tenantId);
+    if (eventQuery.getActor() != null) {
+      criteria = criteria.and("event.actor.id").is(eventQuery.getActor());
+    }
+    if (eventQuery.getGroup() != null) {
+      criteria = criteria.and("event.group.id").is(eventQuery.getGroup());
+    }
+    if (eventQuery.getAction() != null) {
+      criteria = criteria.and("event.action").is(eventQuery.getAction());
+    }
+    if (eventQuery.getObject() != null) {
+      criteria = criteria.and("event.object.id").is(eventQuery.getObject());
+    }
+    String timeField = (eventQuery.getTimeField() == EventQuery.TimeField.EVENT_TIME) ? "event.eventTime" : "event.storedTime";
+    if (eventQuery.getSince() != null || eventQuery.getUntil() != null) {
+      Criteria range = criteria.and(timeField);
+      if (eventQuery.getSince() != null) {
+        range.gt(eventQuery.getSince().toDate());
+      }
+      if (eventQuery.getUntil() != null) {
+        range.lte(eventQuery.getUntil().toDate());
+      }
+    }
+    
+    Query query = new Query(criteria)
+      .with(new Sort(eventQuery.isAscending() ? Direction.ASC : Direction.DESC, timeField, "id"))
+      .limit(eventQuery.getLimit());
+    List<Event> events = new ArrayList<>();
+    for (EventMongo em : mongoTemplate.find(query, EventMongo.class)) {
+      events.add(em.getEvent());
+    }
+    return events;
+  }
+
+  @Override
+  public Set<String> findExistingEventIds(String tenantId, Collection<String> eventIds) {
+    Set<String> existing = new HashSet<>();
+    if (eventIds == null || eventIds.isEmpty()) {
+      return existing;
+    }
+    // one $in query that returns only the matching ids; the raw collection
+    // bypasses field mapping and the nested event id is stored as _id
+    Query query = new Query(Criteria.where("tenantId").is(tenantId).and("event._id").in(eventIds));
+    List<?> ids = mongoTemplate.getCollection(mongoTemplate.getCollectionName(EventMongo.class))
+        .distinct("event._id", query.getQueryObject());
+    for (Object id : ids) {
+      existing.add(String.valueOf(id));
+    }
+    return existing;
+  }
+
   @Override
   public Event save(Event event, String tenantId) {
     if (StringUtils.isBlank(event.getId())) {
@@ -99,12 +266,42 @@ public class MongoReader implements Reader {
     List<Event> savedEvents = null;
     
     if (events != null) {
-      savedEvents =new ArrayList<>();
+      savedEvents = new ArrayList<>(events.size());
+      if (events.isEmpty()) {
+        return savedEvents;
+      }
+      // one unordered bulk upsert keyed on the event id: stream entries can be
+      // delivered more than once, and a redelivered event replaces its earlier
+      // copy instead of failing the whole batch on a duplicate key
+      BulkWriteOperation bulk = mongoTemplate.getCollection(mongoTemplate.getCollectionName(EventMongo.class))
+          .initializeUnorderedBulkOperation();
       for (Event e : events) {
-        savedEvents.add(this.save(e, tenantId));
+        if (StringUtils.isBlank(e.getId())) {
+          e.setId(UUID.randomUUID().toString());
+        }
+        DBObject dbObject = new BasicDBObject();
+        mongoTemplate.getConverter().write(new EventMongo(tenantId, e), dbObject);
+        // keep the stored document's _id on replace, generate one on insert
+        dbObject.removeField("_id");
+        bulk.find(new BasicDBObject("tenantId", tenantId).append("event._id", e.getId()))
+          .upsert().replaceOne(dbObject);
+        savedEvents.add(e);
       }
+      bulk.execute();
     }
     return savedEvents;
   }
 
+  private Page<Event> toEventPage(Page<EventMongo> eventMongos, Pageable pageable) {
+    if (eventMongos == null) {
+      return null;
+    }
+    List<Event> eventList = new ArrayList<>(eventMongos.getNumberOfElements());
+    for (EventMongo em : eventMongos.getContent()) {
+      eventList.add(em.getEvent());
+    }
+    // keep the repository's count so page metadata reflects the whole result
+    return new PageImpl<>(eventList, pageable, eventMongos.getTotalElements());
+  }
+
 }
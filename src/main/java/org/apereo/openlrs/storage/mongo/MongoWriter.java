@@ -13,6 +13,7 @@ import org.apereo.openlrs.model.event.Event;
 import org.apereo.openlrs.storage.Writer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Component;
 
 /**
@@ -24,6 +25,7 @@ import org.springframework.stereotype.Component;
 public class MongoWriter implements Writer {
   
   @Autowired private MongoEventRepository mongoEventRepository;
+  @Autowired private MongoTemplate mongoTemplate;
 
   @Override
   public Event save(Event event, String tenantId) {
@@ -40,9 +42,18 @@ public class MongoWriter implements Writer {
     List<Event> savedEvents = null;
     
     if (events != null) {
-      savedEvents =new ArrayList<>();
+      savedEvents = new ArrayList<>(events.size());
+      List<EventMongo> eventMongos = new ArrayList<>(events.size());
       for (Event e : events) {
-        savedEvents.add(this.save(e, tenantId));
+        if (StringUtils.isBlank(e.getId())) {
+          e.setId(UUID.randomUUID().toString());
+        }
+        eventMongos.add(new EventMongo(tenantId, e));
+        savedEvents.add(e);
+      }
+      if (!eventMongos.isEmpty()) {
+        // a single batch insert rather than one round trip per event
+        mongoTemplate.insert(eventMongos, EventMongo.class);
       }
     }
     return savedEvents;
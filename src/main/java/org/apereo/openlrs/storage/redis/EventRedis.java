@@ -33,6 +33,18 @@ public class EventRedis implements Serializable {
     this.event = event;
   }
 
+  @JsonProperty("rawStatement")
+  private void setRawStatement(String rawStatement) {
+    // Event does not serialize its raw statement, so it travels here
+    if (event != null) {
+      event.setRawStatement(rawStatement);
+    }
+  }
+
+  public String getRawStatement() {
+    return event == null ? null : event.getRawStatement();
+  }
+
   public String getTenantId() {
     return tenantId;
   }
@@ -19,6 +19,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
@@ -47,6 +49,12 @@ public class RedisPubSubConfig {
 		
 		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
 		container.setConnectionFactory(connectionFactory);
+		// the receiver only queues the message, so hand it over on the
+		// subscription thread rather than start a thread per message. The
+		// subscription blocks, so it needs a thread of its own; left unset
+		// it would reuse the task executor and block the context refresh.
+		container.setTaskExecutor(new SyncTaskExecutor());
+		container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("openlrs-pubsub-sub-"));
 		container.addMessageListener(listenerAdapter, new ChannelTopic(channelName()));
 
 		return container;
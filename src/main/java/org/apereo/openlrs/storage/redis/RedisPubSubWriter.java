@@ -25,7 +25,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -69,9 +73,33 @@ public class RedisPubSubWriter implements Writer {
     
     if (events != null && !events.isEmpty()) {
       savedEvents = new ArrayList<Event>(events.size());
+      final List<byte[]> messages = new ArrayList<byte[]>(events.size());
+      RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
       for (Event e : events) {
-        savedEvents.add(this.save(e, tenantId));
+        if (e == null) {
+          throw new IllegalArgumentException("Event cannot be null");
+        }
+        try {
+          messages.add(serializer.serialize(objectMapper.writer().writeValueAsString(new EventRedis(tenantId, e))));
+        } 
+        catch (JsonProcessingException jpe) {
+          log.error(jpe.getLocalizedMessage());
+          throw new RuntimeException();
+        }
+        savedEvents.add(e);
       }
+      
+      final byte[] channel = serializer.serialize(channelName);
+      // pipeline the publishes so the batch costs one round trip
+      redisTemplate.executePipelined(new RedisCallback<Object>() {
+        @Override
+        public Object doInRedis(RedisConnection connection) throws DataAccessException {
+          for (byte[] message : messages) {
+            connection.publish(channel, message);
+          }
+          return null;
+        }
+      });
     }
     
     return savedEvents;
@@ -16,19 +16,39 @@
 package org.apereo.openlrs.storage.redis;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apereo.openlrs.model.event.Event;
 import org.apereo.openlrs.storage.Reader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 /**
+ * Queues messages from the listener thread and saves them from a pool of
+ * workers. Each worker takes up to batchSize messages, waiting at most
+ * lingerMillis after the first for more, deserializes them and saves them
+ * with one saveAll per tenant. A full queue blocks the listener, which
+ * leaves the backlog in the subscription connection.
+ *
  * @author ggilbert
  * @author Lance E Sloan (lsloan at umich dot edu)
  */
@@ -37,17 +57,124 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class RedisPubSubWriterMessageReceiver {
 
   private Logger log = LoggerFactory.getLogger(RedisPubSubWriterMessageReceiver.class);
-  
+
+  @Value("${openlrs.redisPubSub.queueCapacity:10000}")
+  private int queueCapacity;
+
+  @Value("${openlrs.redisPubSub.batchSize:500}")
+  private int batchSize;
+
+  @Value("${openlrs.redisPubSub.lingerMillis:50}")
+  private long lingerMillis;
+
+  @Value("${openlrs.redisPubSub.workers:2}")
+  private int workers;
+
   @Autowired private Reader reader;
   @Autowired private ObjectMapper objectMapper;
 
-  public void onMessage(String json) throws JsonParseException, JsonMappingException, IOException {
+  private ObjectReader eventReader;
+  private BlockingQueue<String> queue;
+  private ExecutorService executor;
+  private volatile boolean running;
+
+  @PostConstruct
+  public void start() {
+    eventReader = objectMapper.reader(EventRedis.class);
+    queue = new ArrayBlockingQueue<String>(queueCapacity);
+    executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("openlrs-pubsub-"));
+    running = true;
+    for (int i = 0; i < workers; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      });
+    }
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    // workers keep going until the queue is empty
+    running = false;
+    executor.shutdown();
+    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+      log.warn(String.format("Stopped with %d messages still queued", queue.size()));
+      executor.shutdownNow();
+    }
+  }
+
+  public void onMessage(String json) throws InterruptedException {
 
     if (log.isDebugEnabled()) {
       log.debug(json);
     }
-    
-    EventRedis event = objectMapper.readValue(json.getBytes(), EventRedis.class);
-    reader.save(event.getEvent(),event.getTenantId());
+
+    queue.put(json);
+  }
+
+  private void drain() {
+    List<String> batch = new ArrayList<String>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        String first = queue.poll(lingerMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          long remaining = deadline - System.nanoTime();
+          if (batch.size() >= batchSize || remaining <= 0) {
+            break;
+          }
+          String next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+
+        save(batch);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      finally {
+        batch.clear();
+      }
+    }
+  }
+
+  void save(List<String> batch) {
+    // Reader.saveAll is per tenant, so split the batch keeping arrival order
+    Map<String, List<Event>> eventsByTenant = new LinkedHashMap<String, List<Event>>();
+    for (String json : batch) {
+      try {
+        EventRedis eventRedis = eventReader.readValue(json);
+        List<Event> events = eventsByTenant.get(eventRedis.getTenantId());
+        if (events == null) {
+          events = new ArrayList<Event>();
+          eventsByTenant.put(eventRedis.getTenantId(), events);
+        }
+        events.add(eventRedis.getEvent());
+      }
+      catch (IOException e) {
+        log.error("Dropping unreadable message", e);
+      }
+    }
+
+    for (Map.Entry<String, List<Event>> entry : eventsByTenant.entrySet()) {
+      try {
+        reader.saveAll(entry.getValue(), entry.getKey());
+      }
+      catch (Exception e) {
+        log.error(String.format("Unable to save %d events for tenant %s", entry.getValue().size(), entry.getKey()), e);
+      }
+    }
   }
 }
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.redis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.Reader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Persists the events {@link RedisStreamsWriter} appends. Every node joins
+ * the same consumer group, so each entry goes to one consumer, and the
+ * nodes share the persistence work.
+ *
+ * A consumer reads up to readCount new entries, saves them with one
+ * Reader.saveAll per tenant, and only then acknowledges and deletes them.
+ * Entries whose save failed stay pending. Entries left pending for
+ * longer than claimIdleMillis are claimed and saved again by whichever
+ * consumer gets to them first. That covers both a failed save and a node
+ * that died holding entries, so delivery is at least once. An entry that
+ * cannot be parsed is logged and dropped, since retrying cannot fix it.
+ *
+ * Scripts cannot block, so an idle consumer polls every pollMillis.
+ * Needs Redis 5 or later.
+ */
+@ConditionalOnProperty(name="openlrs.writer", havingValue="RedisStreamsWriter")
+@Component
+public class RedisStreamsConsumer {
+
+  private Logger log = LoggerFactory.getLogger(RedisStreamsConsumer.class);
+
+  private static final RedisScript<String> CREATE_GROUP = new DefaultRedisScript<String>(
+      "local ok = redis.pcall('XGROUP', 'CREATE', KEYS[1], ARGV[1], '0', 'MKSTREAM') "
+      + "if type(ok) == 'table' and ok.err and not string.find(ok.err, 'BUSYGROUP') then return redis.error_reply(ok.err) end "
+      + "return 'OK'", String.class);
+
+  /**
+   * XREADGROUP is not allowed in scripts before Redis 7, so this does its
+   * job by hand: range from the group's last delivered id, move that id
+   * on and make the entries pending for this consumer, all atomically.
+   * Entries come back flattened as id, json, id, json, ...
+   */
+  @SuppressWarnings("rawtypes")
+  private static final RedisScript<List> READ = new DefaultRedisScript<List>(
+      "local last "
+      + "for _, g in ipairs(redis.call('XINFO', 'GROUPS', KEYS[1])) do "
+      + "  local info = {} "
+      + "  for i = 1, #g, 2 do info[g[i]] = g[i + 1] end "
+      + "  if info['name'] == ARGV[1] then last = info['last-delivered-id'] end "
+      + "end "
+      + "if not last then return redis.error_reply('NOGROUP ' .. ARGV[1]) end "
+      + "local count = tonumber(ARGV[3]) "
+      + "local flat = {} "
+      + "local claim = {'XCLAIM', KEYS[1], ARGV[1], ARGV[2], '0'} "
+      + "for _, entry in ipairs(redis.call('XRANGE', KEYS[1], last, '+', 'COUNT', count + 1)) do "
+      + "  if entry[1] ~= last and #flat < 2 * count then "
+      + "    flat[#flat + 1] = entry[1] flat[#flat + 1] = entry[2][2] claim[#claim + 1] = entry[1] "
+      + "  end "
+      + "end "
+      + "if #flat > 0 then "
+      + "  redis.call('XGROUP', 'SETID', KEYS[1], ARGV[1], flat[#flat - 1]) "
+      + "  claim[#claim + 1] = 'FORCE' claim[#claim + 1] = 'JUSTID' "
+      + "  redis.call(unpack(claim)) "
+      + "end "
+      + "return flat", List.class);
+
+  @SuppressWarnings("rawtypes")
+  private static final RedisScript<List> CLAIM = new DefaultRedisScript<List>(
+      "local pending = redis.call('XPENDING', KEYS[1], ARGV[1], '-', '+', ARGV[4]) "
+      + "local claim = {'XCLAIM', KEYS[1], ARGV[1], ARGV[2], ARGV[3]} "
+      + "for _, p in ipairs(pending) do if tonumber(p[3]) >= tonumber(ARGV[3]) then claim[#claim + 1] = p[1] end end "
+      + "local flat = {} "
+      + "if #claim == 5 then return flat end "
+      + "claim[#claim + 1] = 'JUSTID' "
+      + "for _, id in ipairs(redis.call(unpack(claim))) do "
+      + "  local entry = redis.call('XRANGE', KEYS[1], id, id)[1] "
+      + "  if entry then flat[#flat + 1] = id flat[#flat + 1] = entry[2][2] "
+      + "  else redis.call('XACK', KEYS[1], ARGV[1], id) end "
+      + "end "
+      + "return flat", List.class);
+
+  private static final RedisScript<Long> ACK = new DefaultRedisScript<Long>(
+      "local acked = redis.call('XACK', KEYS[1], ARGV[1], unpack(ARGV, 2)) "
+      + "redis.call('XDEL', KEYS[1], unpack(ARGV, 2)) "
+      + "return acked", Long.class);
+
+  @Value("${openlrs.redisStreams.key:openlrs-events}")
+  private String key;
+
+  @Value("${openlrs.redisStreams.group:openlrs}")
+  private String group;
+
+  @Value("${openlrs.redisStreams.consumer:${instance.name}}")
+  private String consumer;
+
+  @Value("${openlrs.redisStreams.consumers:2}")
+  private int consumers;
+
+  @Value("${openlrs.redisStreams.readCount:500}")
+  private int readCount;
+
+  @Value("${openlrs.redisStreams.pollMillis:200}")
+  private long pollMillis;
+
+  @Value("${openlrs.redisStreams.claimIdleMillis:60000}")
+  private long claimIdleMillis;
+
+  @Autowired private RedisConnectionFactory connectionFactory;
+  @Autowired private Reader reader;
+  @Autowired private ObjectMapper objectMapper;
+
+  private StringRedisTemplate template;
+  private ObjectReader eventReader;
+  private ExecutorService executor;
+  private volatile boolean running;
+
+  @PostConstruct
+  public void start() {
+    template = new StringRedisTemplate(connectionFactory);
+    eventReader = objectMapper.reader(EventRedis.class);
+    template.execute(CREATE_GROUP, Collections.singletonList(key), group);
+
+    running = true;
+    executor = Executors.newFixedThreadPool(consumers, new CustomizableThreadFactory("openlrs-stream-"));
+    for (int i = 0; i < consumers; i++) {
+      final String name = consumer + "-" + i;
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          consume(name);
+        }
+      });
+    }
+    log.info(String.format("Consuming stream %s as group %s, %d consumers named %s-n", key, group, consumers, consumer));
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    executor.shutdown();
+    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+      executor.shutdownNow();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void consume(String name) {
+    long nextClaim = 0;
+    while (running) {
+      try {
+        List<String> entries;
+        if (System.currentTimeMillis() >= nextClaim) {
+          entries = template.execute(CLAIM, Collections.singletonList(key),
+              group, name, String.valueOf(claimIdleMillis), String.valueOf(readCount));
+          nextClaim = System.currentTimeMillis() + claimIdleMillis / 2;
+          if (!entries.isEmpty()) {
+            log.warn(String.format("Claimed %d entries left pending for over %d ms", entries.size() / 2, claimIdleMillis));
+          }
+        }
+        else {
+          entries = template.execute(READ, Collections.singletonList(key), group, name, String.valueOf(readCount));
+        }
+
+        if (entries == null || entries.isEmpty()) {
+          Thread.sleep(pollMillis);
+          continue;
+        }
+
+        List<String> done = save(entries);
+        if (!done.isEmpty()) {
+          List<String> args = new ArrayList<String>(done.size() + 1);
+          args.add(group);
+          args.addAll(done);
+          template.execute(ACK, Collections.singletonList(key), args.toArray());
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      catch (Exception e) {
+        log.error("Unable to consume the event stream", e);
+        try {
+          Thread.sleep(pollMillis);
+        }
+        catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Saves the entries (flattened id, json pairs) with one saveAll per
+   * tenant.
+   *
+   * @return the ids that can be acknowledged: saved or unreadable
+   */
+  List<String> save(List<String> entries) {
+    List<String> done = new ArrayList<String>(entries.size() / 2);
+    Map<String, List<Event>> eventsByTenant = new LinkedHashMap<String, List<Event>>();
+    Map<String, List<String>> idsByTenant = new LinkedHashMap<String, List<String>>();
+    for (int i = 0; i + 1 < entries.size(); i += 2) {
+      String id = entries.get(i);
+      try {
+        EventRedis eventRedis = eventReader.readValue(entries.get(i + 1));
+        List<Event> events = eventsByTenant.get(eventRedis.getTenantId());
+        if (events == null) {
+          events = new ArrayList<Event>();
+          eventsByTenant.put(eventRedis.getTenantId(), events);
+          idsByTenant.put(eventRedis.getTenantId(), new ArrayList<String>());
+        }
+        events.add(eventRedis.getEvent());
+        idsByTenant.get(eventRedis.getTenantId()).add(id);
+      }
+      catch (IOException e) {
+        log.error(String.format("Dropping unreadable stream entry %s", id), e);
+        done.add(id);
+      }
+    }
+
+    for (Map.Entry<String, List<Event>> entry : eventsByTenant.entrySet()) {
+      try {
+        reader.saveAll(entry.getValue(), entry.getKey());
+        done.addAll(idsByTenant.get(entry.getKey()));
+      }
+      catch (Exception e) {
+        log.error(String.format("Unable to save %d events for tenant %s, they stay pending", entry.getValue().size(), entry.getKey()), e);
+      }
+    }
+    return done;
+  }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.Writer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Appends events to a Redis stream, where {@link RedisStreamsConsumer}s
+ * on any node read them through a consumer group and persist them with
+ * the Reader. Unlike pub/sub, an entry stays in the stream until a
+ * consumer has saved it, so a slow or restarting consumer delays events
+ * rather than losing them.
+ *
+ * Each chunk of up to batchSize events is added by one script, one round
+ * trip for the whole chunk. The Redis client in use predates streams, so
+ * XADD, like the consumer's stream commands, runs as Lua. Needs Redis 5
+ * or later.
+ *
+ * Enabled with openlrs.writer=RedisStreamsWriter.
+ */
+@ConditionalOnProperty(name="openlrs.writer", havingValue="RedisStreamsWriter")
+@Component("RedisStreamsWriter")
+public class RedisStreamsWriter implements Writer {
+
+  @SuppressWarnings("rawtypes")
+  private static final RedisScript<List> ADD = new DefaultRedisScript<List>(
+      "local ids = {} "
+      + "for i = 1, #ARGV do ids[i] = redis.call('XADD', KEYS[1], '*', 'e', ARGV[i]) end "
+      + "return ids", List.class);
+
+  @Value("${openlrs.redisStreams.key:openlrs-events}")
+  private String key;
+
+  @Value("${openlrs.redisStreams.batchSize:500}")
+  private int batchSize;
+
+  @Autowired private RedisConnectionFactory connectionFactory;
+  @Autowired private ObjectMapper objectMapper;
+
+  private StringRedisTemplate template;
+  private ObjectWriter writer;
+
+  @PostConstruct
+  public void init() {
+    template = new StringRedisTemplate(connectionFactory);
+    writer = objectMapper.writer();
+  }
+
+  @Override
+  public Event save(Event event, String tenantId) {
+    if (event == null) {
+      throw new IllegalArgumentException("Event cannot be null");
+    }
+    saveAll(Collections.singletonList(event), tenantId);
+    return event;
+  }
+
+  @Override
+  public List<Event> saveAll(Collection<Event> events, String tenantId) {
+    if (events == null || events.isEmpty()) {
+      return null;
+    }
+
+    List<Event> savedEvents = new ArrayList<Event>(events.size());
+    List<String> entries = new ArrayList<String>(Math.min(batchSize, events.size()));
+    for (Event event : events) {
+      if (event == null) {
+        throw new IllegalArgumentException("Event cannot be null");
+      }
+      try {
+        entries.add(writer.writeValueAsString(new EventRedis(tenantId, event)));
+      }
+      catch (JsonProcessingException e) {
+        throw new IllegalArgumentException(e);
+      }
+      savedEvents.add(event);
+
+      if (entries.size() == batchSize) {
+        add(entries);
+        entries.clear();
+      }
+    }
+    if (!entries.isEmpty()) {
+      add(entries);
+    }
+    return savedEvents;
+  }
+
+  private void add(List<String> entries) {
+    template.execute(ADD, Collections.singletonList(key), entries.toArray());
+  }
+
+}
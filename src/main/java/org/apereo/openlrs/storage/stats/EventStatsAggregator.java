@@ -0,0 +1,193 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.stats;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.EventStats;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.Reader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps course activity counters up to date as events are saved, so
+ * /v1/caliper/stats is answered from counters instead of by loading and
+ * grouping the course's events. Counts are kept per (tenant, group, week)
+ * and per (tenant, group, actor, week), with weeks keyed by their first
+ * day as the controller always did.
+ *
+ * The counters live in this process. They are fed by
+ * {@link StatsAggregatingWriter}; a tenant's counters are rebuilt from the
+ * Reader the first time its stats are read after startup, and events saved
+ * before that are left to the rebuild.
+ *
+ * Limits: each node only counts the events it saved itself, so behind a
+ * load balancer the answer depends on the node; run a single node or leave
+ * this off. Events are not deduplicated, so saves that are replayed (WAL
+ * segments after a crash, re-claimed Redis Streams entries, retried Kinesis
+ * records) are counted again until the next rebuild.
+ *
+ * Enabled with openlrs.stats.incremental=true.
+ */
+@ConditionalOnProperty(name="openlrs.stats.incremental", havingValue="true")
+@Component
+public class EventStatsAggregator {
+
+  private Logger log = LoggerFactory.getLogger(EventStatsAggregator.class);
+
+  private static final int REBUILD_PAGE_SIZE = 1000;
+
+  @Autowired private Reader reader;
+
+  private final ConcurrentMap<String, ConcurrentMap<String, GroupCounters>> countersByTenant = new ConcurrentHashMap<>();
+
+  public void add(Collection<Event> events, String tenantId) {
+    if (events == null || events.isEmpty()) {
+      return;
+    }
+    // until the tenant is loaded the Reader holds these events for the rebuild
+    ConcurrentMap<String, GroupCounters> groups = countersByTenant.get(tenantId);
+    if (groups != null) {
+      add(events, groups);
+    }
+  }
+
+  /**
+   * Groups are matched with the same "contains" semantics as
+   * Reader.findByTenantIdAndContext, so the work is proportional to the
+   * number of distinct groups and weeks, not to the number of events.
+   */
+  public EventStats getStats(String tenantId, String groupId) {
+    EventStatsBuilder builder = new EventStatsBuilder();
+    for (Map.Entry<String, GroupCounters> entry : load(tenantId).entrySet()) {
+      if (entry.getKey().contains(groupId)) {
+        entry.getValue().addTo(builder);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Recomputes a tenant's counters from everything the Reader holds and
+   * swaps them in. Events saved while the scan runs may be missed or
+   * counted twice, so run it while the tenant is quiet.
+   *
+   * @return the number of events scanned
+   */
+  public long rebuild(String tenantId) {
+    ConcurrentMap<String, GroupCounters> rebuilt = new ConcurrentHashMap<>();
+    long scanned = 0;
+    String cursor = null;
+    do {
+      CursorPage page = reader.findByTenantId(tenantId, cursor, REBUILD_PAGE_SIZE);
+      if (page.hasContent()) {
+        add(page.getContent(), rebuilt);
+        scanned += page.getContent().size();
+      }
+      cursor = page.getNext();
+    } while (cursor != null);
+
+    countersByTenant.put(tenantId, rebuilt);
+    log.info(String.format("Rebuilt stats for tenant %s from %d events", tenantId, scanned));
+    return scanned;
+  }
+
+  private ConcurrentMap<String, GroupCounters> load(String tenantId) {
+    ConcurrentMap<String, GroupCounters> groups = countersByTenant.get(tenantId);
+    if (groups == null) {
+      synchronized (this) {
+        groups = countersByTenant.get(tenantId);
+        if (groups == null) {
+          rebuild(tenantId);
+          groups = countersByTenant.get(tenantId);
+        }
+      }
+    }
+    return groups;
+  }
+
+  private void add(Collection<Event> events, ConcurrentMap<String, GroupCounters> groups) {
+    for (Event event : events) {
+      if (event.getGroup() == null || event.getGroup().getId() == null) {
+        continue;
+      }
+      groups.computeIfAbsent(event.getGroup().getId(), k -> new GroupCounters()).add(event);
+    }
+  }
+
+  private static class GroupCounters {
+    private final LongAdder total = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> totalByWeek = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ActorCounters> actors = new ConcurrentHashMap<>();
+
+    void add(Event event) {
+      total.increment();
+      String week = (event.getEventTime() == null) ? null : EventStatsBuilder.week(event.getEventTime());
+      if (week != null) {
+        totalByWeek.computeIfAbsent(week, k -> new LongAdder()).increment();
+      }
+      if (event.getActor() != null && event.getActor().getId() != null) {
+        actors.computeIfAbsent(event.getActor().getId(), k -> new ActorCounters()).add(event, week);
+      }
+    }
+
+    void addTo(EventStatsBuilder builder) {
+      builder.total(total.sum());
+      for (Map.Entry<String, LongAdder> entry : totalByWeek.entrySet()) {
+        builder.week(entry.getKey(), entry.getValue().sum());
+      }
+      for (Map.Entry<String, ActorCounters> entry : actors.entrySet()) {
+        entry.getValue().addTo(entry.getKey(), builder);
+      }
+    }
+  }
+
+  private static class ActorCounters {
+    // events without an eventTime count towards the total but no week
+    private final LongAdder withoutWeek = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> totalByWeek = new ConcurrentHashMap<>();
+    private volatile String name;
+
+    void add(Event event, String week) {
+      if (week != null) {
+        totalByWeek.computeIfAbsent(week, k -> new LongAdder()).increment();
+      }
+      else {
+        withoutWeek.increment();
+      }
+      if (event.getActor().getName() != null) {
+        name = event.getActor().getName();
+      }
+    }
+
+    void addTo(String actorId, EventStatsBuilder builder) {
+      builder.student(actorId, name, null, withoutWeek.sum());
+      for (Map.Entry<String, LongAdder> entry : totalByWeek.entrySet()) {
+        builder.student(actorId, name, entry.getKey(), entry.getValue().sum());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.stats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apereo.openlrs.model.event.EventStats;
+import org.apereo.openlrs.model.event.StudentEventStats;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * Assembles an {@link EventStats} from counted buckets, so each Reader
+ * only has to translate its own aggregation results. Weeks are keyed by
+ * their first day (a Monday) in yyyy-MM-dd form.
+ */
+public class EventStatsBuilder {
+
+  private long total;
+  private final Map<String, Long> totalByWeekNumber = new HashMap<>();
+  private final Map<String, StudentEventStats> studentEventStats = new HashMap<>();
+
+  public static String week(DateTime eventTime) {
+    return week(eventTime.toLocalDate());
+  }
+
+  public static String week(LocalDate date) {
+    return date.weekOfWeekyear().roundFloorCopy().toString();
+  }
+
+  public EventStatsBuilder total(long count) {
+    total += count;
+    return this;
+  }
+
+  public EventStatsBuilder week(String week, long count) {
+    totalByWeekNumber.merge(week, count, Long::sum);
+    return this;
+  }
+
+  /**
+   * Adds count events for the student, to the given week when it is not
+   * null. A non-null name replaces the one recorded so far.
+   */
+  public EventStatsBuilder student(String studentId, String studentName, String week, long count) {
+    StudentEventStats studentEventStat = studentEventStats.get(studentId);
+    if (studentEventStat == null) {
+      studentEventStat = new StudentEventStats();
+      studentEventStat.setStudentId(studentId);
+      studentEventStat.setTotalByWeekNumber(new HashMap<String, Long>());
+      studentEventStats.put(studentId, studentEventStat);
+    }
+    studentEventStat.setTotal(studentEventStat.getTotal() + count);
+    if (studentName != null) {
+      studentEventStat.setStudentName(studentName);
+    }
+    if (week != null) {
+      studentEventStat.getTotalByWeekNumber().merge(week, count, Long::sum);
+    }
+    return this;
+  }
+
+  public EventStats build() {
+    long max = 0;
+    for (StudentEventStats studentEventStat : studentEventStats.values()) {
+      max = Math.max(max, studentEventStat.getTotal());
+    }
+
+    EventStats eventStats = new EventStats();
+    eventStats.setTotal(total);
+    eventStats.setTotalByWeekNumber(totalByWeekNumber);
+    eventStats.setStudentActivityStats(studentEventStats);
+    eventStats.setMax(max);
+    return eventStats;
+  }
+
+}
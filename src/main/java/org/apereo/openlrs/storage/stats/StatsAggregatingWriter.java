@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.stats;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.Writer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the configured Writer (looked up by its openlrs.writer name) and
+ * feeds every successfully saved event to the {@link EventStatsAggregator}.
+ * Being the primary Writer, it sits under the controllers and the async
+ * ingest queues alike.
+ */
+@ConditionalOnProperty(name="openlrs.stats.incremental", havingValue="true")
+@Primary
+@Component
+public class StatsAggregatingWriter implements Writer {
+
+  @Value("${openlrs.writer}")
+  private String writerName;
+
+  @Autowired private ApplicationContext applicationContext;
+  @Autowired private EventStatsAggregator eventStatsAggregator;
+
+  private Writer delegate;
+
+  @PostConstruct
+  public void init() {
+    delegate = applicationContext.getBean(writerName, Writer.class);
+  }
+
+  @Override
+  public Event save(Event event, String tenantId) {
+    Event saved = delegate.save(event, tenantId);
+    eventStatsAggregator.add(Collections.singletonList(saved), tenantId);
+    return saved;
+  }
+
+  @Override
+  public List<Event> saveAll(Collection<Event> events, String tenantId) {
+    List<Event> saved = delegate.saveAll(events, tenantId);
+    eventStatsAggregator.add(saved, tenantId);
+    return saved;
+  }
+
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.wal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of opaque records kept in fixed size, memory-mapped
+ * segment files. Each record is written as length, CRC32, then the bytes,
+ * and is addressed by a position that grows across segments (a segment is
+ * named after the position of its first byte).
+ *
+ * Appends are group committed: callers that arrive while another caller is
+ * forcing the segment to disk are covered by that force or the next one,
+ * so concurrent requests share fsyncs. A torn record at the tail (bad CRC
+ * or short length) marks the end of the log on reopen.
+ *
+ * The replay position is kept in a separate checkpoint file.
+ */
+public class SegmentLog implements Closeable {
+
+  private static final String SEGMENT_SUFFIX = ".wal";
+  private static final String CHECKPOINT_FILE = "checkpoint";
+  private static final int RECORD_HEADER = 8;
+
+  private final File dir;
+  private final int segmentSize;
+  private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+
+  private final Object appendLock = new Object();
+  private final Object syncLock = new Object();
+  private volatile Segment active;
+  private volatile long writePosition;
+  private long syncedPosition;
+
+  public SegmentLog(File dir, int segmentSize) throws IOException {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException(String.format("Unable to create write-ahead log directory %s", dir));
+    }
+
+    File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+    Arrays.sort(files);
+    for (File file : files) {
+      long base = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+      segments.put(base, Segment.open(file, base, segmentSize));
+    }
+
+    if (segments.isEmpty()) {
+      active = Segment.open(segmentFile(0), 0, segmentSize);
+      segments.put(0L, active);
+    }
+    else {
+      active = segments.lastEntry().getValue();
+      for (Segment segment : segments.headMap(active.base).values()) {
+        segment.sealed = true;
+      }
+    }
+    writePosition = active.base + active.end;
+    syncedPosition = writePosition;
+  }
+
+  /**
+   * Appends the records and returns once they are on disk.
+   * @return the position just past the last record
+   */
+  public long append(List<byte[]> records) throws IOException {
+    long end;
+    // reject the whole batch before any of it is written
+    for (byte[] record : records) {
+      if (record.length + RECORD_HEADER > segmentSize) {
+        throw new IllegalArgumentException(String.format("Record of %d bytes does not fit in a segment", record.length));
+      }
+    }
+    synchronized (appendLock) {
+      for (byte[] record : records) {
+        if (active.remaining() < record.length + RECORD_HEADER) {
+          roll();
+        }
+        active.write(record);
+      }
+      end = active.base + active.end;
+      writePosition = end;
+    }
+    sync(end);
+    return end;
+  }
+
+  /**
+   * Reads up to maxRecords records starting at position. Positions before
+   * the oldest retained segment start at that segment.
+   */
+  public Batch read(long position, int maxRecords) {
+    List<byte[]> records = new ArrayList<byte[]>();
+
+    Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+    if (entry == null) {
+      entry = segments.firstEntry();
+      position = entry.getKey();
+    }
+    Segment segment = entry.getValue();
+    int offset = (int) (position - segment.base);
+
+    while (records.size() < maxRecords) {
+      if (offset < segment.end) {
+        byte[] record = segment.read(offset);
+        records.add(record);
+        offset += RECORD_HEADER + record.length;
+      }
+      else if (segment.sealed) {
+        if (offset < segment.end) {
+          // appended between the end check and roll() sealing the segment
+          continue;
+        }
+        Map.Entry<Long, Segment> next = segments.higherEntry(segment.base);
+        if (next == null) {
+          break;
+        }
+        segment = next.getValue();
+        offset = 0;
+      }
+      else {
+        break;
+      }
+    }
+    return new Batch(records, segment.base + offset);
+  }
+
+  /**
+   * Deletes the segments that lie entirely before position.
+   */
+  public void truncateBefore(long position) throws IOException {
+    for (Segment segment : segments.headMap(position).values()) {
+      if (segment.sealed && segment.base + segment.end <= position) {
+        segments.remove(segment.base);
+        segment.close();
+        Files.deleteIfExists(segment.file.toPath());
+      }
+    }
+  }
+
+  public long getWritePosition() {
+    return writePosition;
+  }
+
+  public long readCheckpoint() throws IOException {
+    Path checkpoint = new File(dir, CHECKPOINT_FILE).toPath();
+    if (!Files.exists(checkpoint)) {
+      return 0;
+    }
+    return Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim());
+  }
+
+  public void writeCheckpoint(long position) throws IOException {
+    Path tmp = new File(dir, CHECKPOINT_FILE + ".tmp").toPath();
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      channel.write(ByteBuffer.wrap(String.valueOf(position).getBytes(StandardCharsets.US_ASCII)));
+      channel.force(true);
+    }
+    Files.move(tmp, new File(dir, CHECKPOINT_FILE).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (appendLock) {
+      active.force();
+      for (Segment segment : segments.values()) {
+        segment.close();
+      }
+    }
+  }
+
+  private void sync(long end) throws IOException {
+    synchronized (syncLock) {
+      if (syncedPosition >= end) {
+        // someone else's force already covered this append
+        return;
+      }
+      long target = writePosition;
+      active.force();
+      syncedPosition = target;
+    }
+  }
+
+  private void roll() throws IOException {
+    // force the full segment now, sync() only ever forces the active one
+    active.force();
+    long base = active.base + active.end;
+    Segment next = Segment.open(segmentFile(base), base, segmentSize);
+    segments.put(base, next);
+    active.sealed = true;
+    active = next;
+  }
+
+  private File segmentFile(long base) {
+    return new File(dir, String.format("%020d%s", base, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * The records read by one call to {@link SegmentLog#read(long, int)} and
+   * the position to read from next.
+   */
+  public static class Batch {
+    private final List<byte[]> records;
+    private final long next;
+
+    Batch(List<byte[]> records, long next) {
+      this.records = records;
+      this.next = next;
+    }
+
+    public List<byte[]> getRecords() {
+      return records;
+    }
+
+    public long getNext() {
+      return next;
+    }
+  }
+
+  private static class Segment {
+    private final File file;
+    private final long base;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private volatile int end;
+    private volatile boolean sealed;
+
+    private Segment(File file, long base, FileChannel channel, MappedByteBuffer buffer) {
+      this.file = file;
+      this.base = base;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+    static Segment open(File file, long base, int size) throws IOException {
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+      Segment segment = new Segment(file, base, channel, buffer);
+      segment.end = segment.recover();
+      return segment;
+    }
+
+    /** scans for the first missing or torn record */
+    private int recover() {
+      ByteBuffer view = buffer.duplicate();
+      int offset = 0;
+      while (offset + RECORD_HEADER <= view.capacity()) {
+        int length = view.getInt(offset);
+        if (length <= 0 || offset + RECORD_HEADER + length > view.capacity()) {
+          break;
+        }
+        byte[] record = new byte[length];
+        view.position(offset + RECORD_HEADER);
+        view.get(record);
+        if (crc(record) != view.getInt(offset + 4)) {
+          break;
+        }
+        offset += RECORD_HEADER + length;
+      }
+      return offset;
+    }
+
+    int remaining() {
+      return buffer.capacity() - end;
+    }
+
+    /** only called under the log's append lock */
+    void write(byte[] record) {
+      int offset = end;
+      buffer.putInt(offset + 4, crc(record));
+      buffer.position(offset + RECORD_HEADER);
+      buffer.put(record);
+      if (buffer.remaining() >= 4) {
+        // clear what a previous run may have left after a torn tail
+        buffer.putInt(buffer.position(), 0);
+      }
+      // the length goes last so a reader never sees a partial record
+      buffer.putInt(offset, record.length);
+      end = offset + RECORD_HEADER + record.length;
+    }
+
+    byte[] read(int offset) {
+      ByteBuffer view = buffer.duplicate();
+      byte[] record = new byte[view.getInt(offset)];
+      view.position(offset + RECORD_HEADER);
+      view.get(record);
+      return record;
+    }
+
+    void force() {
+      buffer.force();
+    }
+
+    void close() throws IOException {
+      channel.close();
+    }
+
+    private static int crc(byte[] record) {
+      CRC32 crc = new CRC32();
+      crc.update(record);
+      return (int) crc.getValue();
+    }
+  }
+
+}
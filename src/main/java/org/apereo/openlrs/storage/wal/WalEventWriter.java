@@ -0,0 +1,245 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.wal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.EventQueue;
+import org.apereo.openlrs.storage.Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Accepts events by appending them to a local {@link SegmentLog} and
+ * returns once they are on disk, so a slow or unavailable backend no
+ * longer loses events or holds up the request. A single replay thread
+ * reads the log from the last checkpoint, hands batches to the configured
+ * {@link Writer} and advances the checkpoint only after a batch is
+ * written. A failed batch is retried until the backend comes back, so
+ * delivery is at least once.
+ *
+ * Enabled with openlrs.ingest.async=wal.
+ */
+@ConditionalOnProperty(name="openlrs.ingest.async", havingValue="wal")
+@Component
+public class WalEventWriter implements EventQueue {
+
+  private Logger log = LoggerFactory.getLogger(WalEventWriter.class);
+
+  @Value("${openlrs.ingest.wal.dir:wal}")
+  private String dir;
+
+  @Value("${openlrs.ingest.wal.segmentSize:67108864}")
+  private int segmentSize;
+
+  @Value("${openlrs.ingest.wal.retryMillis:5000}")
+  private long retryMillis;
+
+  @Value("${openlrs.ingest.batchSize:500}")
+  private int batchSize;
+
+  @Value("${openlrs.ingest.flushIntervalMillis:200}")
+  private long flushIntervalMillis;
+
+  @Autowired private Writer writer;
+  @Autowired private ObjectMapper objectMapper;
+  @Autowired private GaugeService gaugeService;
+  @Autowired private CounterService counterService;
+
+  private SegmentLog segmentLog;
+  private Thread replayer;
+  private volatile boolean running;
+  private volatile long checkpoint;
+  private final Object appended = new Object();
+
+  @PostConstruct
+  public void start() throws IOException {
+    segmentLog = new SegmentLog(new File(dir), segmentSize);
+    checkpoint = segmentLog.readCheckpoint();
+    running = true;
+
+    replayer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        replay();
+      }
+    }, "openlrs-wal-replay");
+    replayer.start();
+
+    log.info(String.format("Write-ahead log opened in %s, %d bytes to replay",
+        new File(dir).getAbsolutePath(), segmentLog.getWritePosition() - checkpoint));
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException, IOException {
+    running = false;
+    synchronized (appended) {
+      appended.notifyAll();
+    }
+    replayer.join(30000);
+    segmentLog.close();
+  }
+
+  @Override
+  public void enqueue(Collection<Event> events, String tenantId) {
+    if (events == null || events.isEmpty()) {
+      return;
+    }
+
+    List<byte[]> records = new ArrayList<byte[]>(events.size());
+    for (Event event : events) {
+      records.add(encode(tenantId, event));
+    }
+
+    try {
+      long position = segmentLog.append(records);
+      gaugeService.submit("openlrs.ingest.wal.backlog", position - checkpoint);
+    }
+    catch (IOException e) {
+      throw new RuntimeException("Unable to append to the write-ahead log", e);
+    }
+
+    synchronized (appended) {
+      appended.notifyAll();
+    }
+  }
+
+  private void replay() {
+    while (running) {
+      try {
+        SegmentLog.Batch batch = segmentLog.read(checkpoint, batchSize);
+        if (batch.getRecords().isEmpty()) {
+          synchronized (appended) {
+            if (running && segmentLog.getWritePosition() <= checkpoint) {
+              appended.wait(flushIntervalMillis);
+            }
+          }
+          continue;
+        }
+
+        if (write(batch.getRecords())) {
+          checkpoint = batch.getNext();
+          segmentLog.writeCheckpoint(checkpoint);
+          segmentLog.truncateBefore(checkpoint);
+          gaugeService.submit("openlrs.ingest.wal.backlog", segmentLog.getWritePosition() - checkpoint);
+        }
+        else {
+          Thread.sleep(retryMillis);
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      catch (Exception e) {
+        log.error("Write-ahead log replay failed", e);
+        try {
+          Thread.sleep(retryMillis);
+        }
+        catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private boolean write(List<byte[]> records) {
+    // Writer.saveAll is per tenant, so split the batch keeping log order
+    Map<String, List<Event>> eventsByTenant = new LinkedHashMap<String, List<Event>>();
+    for (byte[] record : records) {
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      byte[] tenantId = new byte[buffer.getShort()];
+      buffer.get(tenantId);
+      int rawLength = buffer.getInt();
+      String rawStatement = null;
+      if (rawLength >= 0) {
+        rawStatement = new String(record, buffer.position(), rawLength, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + rawLength);
+      }
+      try {
+        Event event = objectMapper.readValue(record, buffer.position(), buffer.remaining(), Event.class);
+        event.setRawStatement(rawStatement);
+        String tenant = new String(tenantId, StandardCharsets.UTF_8);
+        List<Event> events = eventsByTenant.get(tenant);
+        if (events == null) {
+          events = new ArrayList<Event>();
+          eventsByTenant.put(tenant, events);
+        }
+        events.add(event);
+      }
+      catch (IOException e) {
+        // retrying will not make it readable, so skip it rather than block the log
+        log.error("Skipping unreadable write-ahead log record", e);
+        counterService.increment("openlrs.ingest.wal.skipped");
+      }
+    }
+
+    for (Map.Entry<String, List<Event>> entry : eventsByTenant.entrySet()) {
+      try {
+        writer.saveAll(entry.getValue(), entry.getKey());
+      }
+      catch (Exception e) {
+        log.error(String.format("Unable to replay %d events for tenant %s, will retry", entry.getValue().size(), entry.getKey()), e);
+        counterService.increment("openlrs.ingest.failed");
+        return false;
+      }
+    }
+    counterService.increment("openlrs.ingest.batches");
+    return true;
+  }
+
+  private byte[] encode(String tenantId, Event event) {
+    byte[] tenant = tenantId.getBytes(StandardCharsets.UTF_8);
+    byte[] json;
+    try {
+      json = objectMapper.writeValueAsBytes(event);
+    }
+    catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+    // Event does not serialize its raw statement, so it is written ahead of the JSON
+    byte[] raw = event.getRawStatement() == null ? new byte[0] : event.getRawStatement().getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(2 + tenant.length + 4 + raw.length + json.length);
+    buffer.putShort((short) tenant.length);
+    buffer.put(tenant);
+    buffer.putInt(event.getRawStatement() == null ? -1 : raw.length);
+    buffer.put(raw);
+    buffer.put(json);
+    return buffer.array();
+  }
+
+}
@@ -23,7 +23,10 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.apereo.openlrs.KeyManager;
+import org.apereo.openlrs.Tenant;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 
 /**
@@ -54,6 +57,22 @@ public class AuthorizationUtils {
     
     
 
+	/**
+	 * Returns the tenant OpenLRSAuthenticationFilter stored on the current
+	 * request, and only asks the KeyManager when there is none (e.g. with
+	 * authentication disabled).
+	 */
+	public static Tenant getTenant(String key, KeyManager keyManager) {
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		if (requestAttributes != null) {
+			Object tenant = requestAttributes.getAttribute("tenant", RequestAttributes.SCOPE_REQUEST);
+			if (tenant instanceof Tenant) {
+				return (Tenant) tenant;
+			}
+		}
+		return keyManager.getTenantForKey(key);
+	}
+
 	private static String getKeyOauth(String authorizationHeader) {
 		Map<String,String> oauth_parameters = OAuthUtils.decodeAuthorization(authorizationHeader);
 		
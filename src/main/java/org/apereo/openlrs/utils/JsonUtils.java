@@ -7,13 +7,30 @@ import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
 
 
 public class JsonUtils {
 	private static Logger log = Logger.getLogger(JsonUtils.class);
+
+	/**
+	 * Writers are immutable and thread safe, so one per configuration is
+	 * shared rather than building an ObjectMapper on every call. The Joda
+	 * writer matches the application ObjectMapper and is used for events.
+	 */
+	private static final ObjectWriter PLAIN_WRITER = new ObjectMapper().writer();
+	private static final ObjectWriter JODA_WRITER = new ObjectMapper()
+			.registerModule(new JodaModule())
+			.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+			.writer();
     /**
      * Creates a map from the given JSON string
      * 
@@ -46,10 +63,26 @@ public class JsonUtils {
     public static String parseJsonMapToString(Map<String, ?> jsonMap) {
         assert jsonMap != null;
 
-    	ObjectMapper om = new ObjectMapper();
     	String rawJson = null;
     	try {
-			rawJson = om.writer().writeValueAsString(jsonMap);
+			rawJson = PLAIN_WRITER.writeValueAsString(jsonMap);
+		} 
+    	catch (JsonProcessingException e) {
+			log.error(e.getMessage(), e); 
+		}
+		return rawJson;
+    }
+
+    /**
+     * Serializes with the plain, shared writer
+     * 
+     * @param value the object to write
+     * @return the JSON string, or null if it could not be written
+     */
+    public static String toJson(Object value) {
+    	String rawJson = null;
+    	try {
+			rawJson = PLAIN_WRITER.writeValueAsString(value);
 		} 
     	catch (JsonProcessingException e) {
 			log.error(e.getMessage(), e); 
@@ -57,4 +90,56 @@ public class JsonUtils {
 		return rawJson;
     }
 
+    /**
+     * Serializes with the shared Joda-aware writer, ISO dates
+     * 
+     * @param value the object to write
+     * @return the JSON string, or null if it could not be written
+     */
+    public static String toJodaJson(Object value) {
+    	String rawJson = null;
+    	try {
+			rawJson = JODA_WRITER.writeValueAsString(value);
+		} 
+    	catch (JsonProcessingException e) {
+			log.error(e.getMessage(), e); 
+		}
+		return rawJson;
+    }
+
+    /**
+     * Serializes with the shared Joda-aware writer straight to UTF-8 bytes.
+     * Jackson encodes into its thread-local recycled buffers, so there is
+     * no intermediate String and wrapping the result in a ByteBuffer is free.
+     * 
+     * @param value the object to write
+     * @return the UTF-8 JSON bytes
+     */
+    public static byte[] toJodaJsonBytes(Object value) throws JsonProcessingException {
+    	return JODA_WRITER.writeValueAsBytes(value);
+    }
+
+    /**
+     * Moves a streaming parser to the value of a top level field, skipping
+     * the fields before it without building them
+     * 
+     * @param parser a parser that has not read the opening brace yet
+     * @param fieldName the field to find
+     * @return true if the parser is now on the field's value
+     */
+    public static boolean seekField(JsonParser parser, String fieldName) throws IOException {
+    	if (parser.nextToken() != JsonToken.START_OBJECT) {
+    		throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+    	}
+    	while (parser.nextToken() == JsonToken.FIELD_NAME) {
+    		String name = parser.getCurrentName();
+    		parser.nextToken();
+    		if (fieldName.equals(name)) {
+    			return true;
+    		}
+    		parser.skipChildren();
+    	}
+    	return false;
+    }
+
 }
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Builds an OAuth 1.0 signature base string straight into a reusable byte
+ * buffer and signs it with an HMAC that was keyed once per secret.
+ *
+ * Initialized Macs are kept as prototypes per (algorithm, secret); each
+ * thread signs with its own clone, so a request costs neither a
+ * SecretKeySpec nor Mac.getInstance/init. Percent-encoding follows RFC 3986
+ * (the same output as URLEncoder with the OAuth replacements) without
+ * regular expressions or intermediate Strings.
+ *
+ * Use {@link #get()} on the signing thread, append the base string, then
+ * {@link #sign(String, String, boolean)}. Instances are not shared.
+ */
+public final class OAuthSigner {
+
+	private static final int MAX_PROTOTYPES = 1000;
+	private static final int MAX_MACS_PER_THREAD = 16;
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+	private static final Cache<String, KeyedMac> PROTOTYPES = CacheBuilder.newBuilder().maximumSize(MAX_PROTOTYPES).build();
+	private static final ThreadLocal<OAuthSigner> SIGNERS = ThreadLocal.withInitial(OAuthSigner::new);
+
+	private byte[] buffer = new byte[1024];
+	private int length;
+
+	@SuppressWarnings("serial")
+	private final Map<String, KeyedMac> macs = new LinkedHashMap<String, KeyedMac>(MAX_MACS_PER_THREAD, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, KeyedMac> eldest) {
+			return size() > MAX_MACS_PER_THREAD;
+		}
+	};
+
+	private OAuthSigner() {}
+
+	/**
+	 * @return this thread's signer with an empty base string
+	 */
+	public static OAuthSigner get() {
+		OAuthSigner signer = SIGNERS.get();
+		signer.length = 0;
+		return signer;
+	}
+
+	/**
+	 * Appends ASCII text as is, e.g. "&amp;" or an already encoded "%26".
+	 */
+	public OAuthSigner append(String ascii) {
+		ensureCapacity(ascii.length());
+		for (int i = 0; i < ascii.length(); i++) {
+			buffer[length++] = (byte) ascii.charAt(i);
+		}
+		return this;
+	}
+
+	/**
+	 * Appends the percent-encoded UTF-8 form of s; null appends nothing.
+	 */
+	public OAuthSigner appendEncoded(String s) {
+		encode(s, false);
+		return this;
+	}
+
+	/**
+	 * Appends s percent-encoded twice, as LTI parameters are.
+	 */
+	public OAuthSigner appendEncodedTwice(String s) {
+		encode(s, true);
+		return this;
+	}
+
+	public String baseString() {
+		return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Signs the base string appended so far.
+	 *
+	 * @param algorithm a JCE Mac name, e.g. HmacSHA1
+	 * @param secret the consumer secret; the HMAC key is secret + "&amp;"
+	 * @param encodeSecret whether the secret is percent-encoded before use
+	 * @return the Base64 encoded signature as ASCII bytes
+	 */
+	public byte[] sign(String algorithm, String secret, boolean encodeSecret) {
+		Mac mac = mac(algorithm, secret, encodeSecret);
+		mac.update(buffer, 0, length);
+		return Base64.getEncoder().encode(mac.doFinal());
+	}
+
+	private Mac mac(String algorithm, String secret, boolean encodeSecret) {
+		KeyedMac keyedMac = macs.get(secret);
+		if (keyedMac == null || !keyedMac.matches(algorithm, encodeSecret)) {
+			keyedMac = prototype(algorithm, secret, encodeSecret).copy();
+			macs.put(secret, keyedMac);
+		}
+		return keyedMac.mac;
+	}
+
+	private static KeyedMac prototype(String algorithm, String secret, boolean encodeSecret) {
+		KeyedMac prototype = PROTOTYPES.getIfPresent(secret);
+		if (prototype == null || !prototype.matches(algorithm, encodeSecret)) {
+			String key = (encodeSecret ? encode(secret) : secret) + "&";
+			try {
+				Mac mac = Mac.getInstance(algorithm);
+				mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), algorithm));
+				prototype = new KeyedMac(algorithm, encodeSecret, mac);
+			}
+			catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+			PROTOTYPES.put(secret, prototype);
+		}
+		return prototype;
+	}
+
+	private static String encode(String s) {
+		OAuthSigner scratch = new OAuthSigner();
+		scratch.encode(s, false);
+		return scratch.baseString();
+	}
+
+	private void encode(String s, boolean twice) {
+		if (s == null) {
+			return;
+		}
+		// worst case is 4 UTF-8 bytes per char pair, each written as %25XX
+		ensureCapacity(s.length() * 10);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| c == '-' || c == '.' || c == '_' || c == '~') {
+				buffer[length++] = (byte) c;
+			}
+			else if (c < 0x80) {
+				escape(c, twice);
+			}
+			else if (c < 0x800) {
+				escape(0xC0 | (c >> 6), twice);
+				escape(0x80 | (c & 0x3F), twice);
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				escape(0xF0 | (codePoint >> 18), twice);
+				escape(0x80 | ((codePoint >> 12) & 0x3F), twice);
+				escape(0x80 | ((codePoint >> 6) & 0x3F), twice);
+				escape(0x80 | (codePoint & 0x3F), twice);
+			}
+			else if (Character.isSurrogate(c)) {
+				// unpaired, encoded as '?' like String.getBytes and URLEncoder do
+				escape('?', twice);
+			}
+			else {
+				escape(0xE0 | (c >> 12), twice);
+				escape(0x80 | ((c >> 6) & 0x3F), twice);
+				escape(0x80 | (c & 0x3F), twice);
+			}
+		}
+	}
+
+	private void escape(int b, boolean twice) {
+		buffer[length++] = '%';
+		if (twice) {
+			buffer[length++] = '2';
+			buffer[length++] = '5';
+		}
+		buffer[length++] = HEX[(b >> 4) & 0xF];
+		buffer[length++] = HEX[b & 0xF];
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length + extra > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+		}
+	}
+
+	private static class KeyedMac {
+		private final String algorithm;
+		private final boolean encodeSecret;
+		private final Mac mac;
+
+		KeyedMac(String algorithm, boolean encodeSecret, Mac mac) {
+			this.algorithm = algorithm;
+			this.encodeSecret = encodeSecret;
+			this.mac = mac;
+		}
+
+		boolean matches(String algorithm, boolean encodeSecret) {
+			return this.algorithm.equals(algorithm) && this.encodeSecret == encodeSecret;
+		}
+
+		KeyedMac copy() {
+			try {
+				return new KeyedMac(algorithm, encodeSecret, (Mac) mac.clone());
+			}
+			catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(String.format("%s does not support clone", algorithm), e);
+			}
+		}
+	}
+
+}
@@ -15,19 +15,16 @@
  */
 package org.apereo.openlrs.utils;
 
-import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
 
 
@@ -72,46 +69,56 @@ public class OAuthUtils {
 	public static String sign(String secret, Map<String, String> oauthParameters, String algorithm, String method,
 			String url) {
 		
-		StringBuilder signatureBase = new StringBuilder(OAuthUtils.percentEncode(method));
-		signatureBase.append("&");
-		signatureBase.append(OAuthUtils.percentEncode(url));
-		signatureBase.append("&");
+		OAuthSigner signer = OAuthSigner.get();
+		signer.appendEncoded(method).append("&").appendEncoded(url).append("&");
 		
-		Map<String, String> treeMap = new TreeMap<String, String>(oauthParameters);
-		treeMap.remove("oauth_signature");
-		treeMap.remove("realm");
+		// an already sorted map is signed in place, oauth_signature and realm are skipped
+		Map<String, String> sorted = oauthParameters;
+		if (!(oauthParameters instanceof SortedMap) || ((SortedMap<String, String>) oauthParameters).comparator() != null) {
+			sorted = new TreeMap<String, String>(oauthParameters);
+		}
 		
 		boolean first = true;
-		for (Map.Entry<String, String> entry : treeMap.entrySet()) {
+		for (Map.Entry<String, String> entry : sorted.entrySet()) {
+			if ("oauth_signature".equals(entry.getKey()) || "realm".equals(entry.getKey())) {
+				continue;
+			}
 			if (!first)
-				signatureBase.append(OAuthUtils.percentEncode("&"));
+				signer.append("%26");
 			else
 				first = false;
 			
-			signatureBase.append(OAuthUtils.percentEncode(entry.getKey()+"="+entry.getValue()));
-		}
-		
-		Mac mac = null;
-		try {
-			SecretKeySpec secretKeySpec = new SecretKeySpec(
-					(OAuthUtils.percentEncode(secret) + "&").getBytes(), algorithm);
-					
-			mac = Mac.getInstance(secretKeySpec.getAlgorithm());
-			mac.init(secretKeySpec);		
-			
-		} 
-		catch (Exception e) {
-			throw new RuntimeException(e);
+			// same bytes as encoding key + "=" + value, a null value is signed as "null"
+			signer.appendEncoded(entry.getKey()).append("%3D").appendEncoded(String.valueOf(entry.getValue()));
 		}
 		
 		if (log.isDebugEnabled()) {
-			log.debug("signatureBaseString: " + signatureBase.toString());
+			log.debug("signatureBaseString: " + signer.baseString());
 		}
 		
-		byte[] bytes = mac.doFinal(signatureBase.toString().getBytes());
-		byte[] encodedMacBytes = Base64.encodeBase64(bytes);
-
-		return new String(encodedMacBytes);
+		return new String(signer.sign(algorithm, secret == null ? "" : secret, true), StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * Signs the request and compares the result with signature in constant time.
+	 */
+	public static boolean verify(String signature, String secret, Map<String, String> oauthParameters, String algorithm,
+			String method, String url) {
+		if (signature == null) {
+			return false;
+		}
+		String calculated = sign(secret, oauthParameters, algorithm, method, url);
+		return constantTimeEquals(signature, calculated);
+	}
+	
+	/**
+	 * Compares two secrets without returning early on the first differing byte.
+	 */
+	public static boolean constantTimeEquals(String a, String b) {
+		if (a == null || b == null) {
+			return a == b;
+		}
+		return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
 	}
 	
 	public static final String mapToJava(String name) {
@@ -122,19 +129,6 @@ public class OAuthUtils {
 		return algorithm;		
 	}
 
-	private static String percentEncode(String s) {
-        if (s == null) {
-            return "";
-        }
-        try {
-            return URLEncoder.encode(s, "UTF-8")
-                    .replace("+", "%20").replace("*", "%2A")
-                    .replace("%7E", "~");
-        } catch (UnsupportedEncodingException uee) {
-            throw new RuntimeException(uee.getMessage(), uee);
-        }
-	}
-	
     private static String decodePercent(String s) {
     	try {
     		return URLDecoder.decode(s, "UTF-8");
@@ -5,6 +5,8 @@ import java.util.Map;
 
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apereo.openlrs.storage.EventQuery;
+import org.joda.time.DateTime;
 
 public class StatementUtils {
 	
@@ -13,6 +15,8 @@ public class StatementUtils {
 	public static final String SINCE_FILTER = "since";
 	public static final String UNTIL_FILTER = "until";
 	public static final String LIMIT_FILTER = "limit";
+	public static final String VERB_FILTER = "verb";
+	public static final String ASCENDING_FILTER = "ascending";
 
     /**
      * Verifies the statement has all required properties:
@@ -83,19 +87,24 @@ public class StatementUtils {
     /**
      * Creates a map of the statement filter criteria. If a value is not set, it is not added to the map/
      * 
-     * @param statementId the UUID of the statement
      * @param actor the ID of the actor
+     * @param verb the ID of the verb
      * @param activity the activity
+     * @param ascending "true" to return the oldest statements first
      * @return the HashMap containing the filter criteria
      */
-    public static Map<String, String> createStatementFilterMap(String actor, String activity, String since, String until, String limit) {
-        Map<String, String> filterMap = new HashMap<String, String>(3);
+    public static Map<String, String> createStatementFilterMap(String actor, String verb, String activity, String since, String until, String limit, String ascending) {
+        Map<String, String> filterMap = new HashMap<String, String>(7);
 
        // actor
         if (!StringUtils.isEmpty(actor)) {
             filterMap.put(ACTOR_FILTER, actor);
         }
 
+        if (!StringUtils.isEmpty(verb)) {
+            filterMap.put(VERB_FILTER, verb);
+        }
+
         // activity
         if (!StringUtils.isEmpty(activity)) {
             filterMap.put(ACTIVITY_FILTER, activity);
@@ -121,7 +130,37 @@ public class StatementUtils {
     		}
         }
 
+        if (!StringUtils.isEmpty(ascending)) {
+            filterMap.put(ASCENDING_FILTER, String.valueOf(Boolean.parseBoolean(ascending)));
+        }
+
         return filterMap;
     }
 
+    /**
+     * Turns a filter map from {@link #createStatementFilterMap} into a Reader query.
+     * xAPI since and until refer to the time a statement was stored.
+     * 
+     * @throws IllegalArgumentException if since or until is not an ISO 8601 timestamp
+     */
+    public static EventQuery toEventQuery(Map<String, String> filterMap) {
+        EventQuery.Builder builder = EventQuery.builder()
+            .actor(filterMap.get(ACTOR_FILTER))
+            .action(filterMap.get(VERB_FILTER))
+            .object(filterMap.get(ACTIVITY_FILTER))
+            .timeField(EventQuery.TimeField.STORED_TIME)
+            .ascending(Boolean.parseBoolean(filterMap.get(ASCENDING_FILTER)));
+
+        if (filterMap.containsKey(SINCE_FILTER)) {
+            builder.since(DateTime.parse(filterMap.get(SINCE_FILTER)));
+        }
+        if (filterMap.containsKey(UNTIL_FILTER)) {
+            builder.until(DateTime.parse(filterMap.get(UNTIL_FILTER)));
+        }
+        if (filterMap.containsKey(LIMIT_FILTER)) {
+            builder.limit(Integer.parseInt(filterMap.get(LIMIT_FILTER)));
+        }
+        return builder.build();
+    }
+
 }
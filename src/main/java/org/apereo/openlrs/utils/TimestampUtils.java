@@ -20,14 +20,136 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
 
+import org.joda.time.DateTime;
+
 /**
  * @author ggilbert
  *
  */
 public class TimestampUtils {
+	private static final long INVALID = Long.MIN_VALUE;
+	
 	public static String getISO8601StringForDate(Date date) {
 		DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
 		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
 		return dateFormat.format(date);
 	}
+	
+	/**
+	 * Same result as new DateTime(timestamp), but timestamps of the form
+	 * yyyy-MM-ddTHH:mm:ss[.fraction](Z|+HH:mm|+HHmm|+HH), which is what
+	 * statements carry, are read directly instead of going through the
+	 * Joda converter and parser. Anything else is left to Joda.
+	 */
+	public static DateTime parseDateTime(String timestamp) {
+		long millis = parseMillis(timestamp);
+		if (millis == INVALID) {
+			return new DateTime(timestamp);
+		}
+		return new DateTime(millis);
+	}
+	
+	static long parseMillis(String s) {
+		int length = s.length();
+		if (length < 20 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+				|| s.charAt(13) != ':' || s.charAt(16) != ':') {
+			return INVALID;
+		}
+		int year = digits(s, 0, 4);
+		int month = digits(s, 5, 2);
+		int day = digits(s, 8, 2);
+		int hour = digits(s, 11, 2);
+		int minute = digits(s, 14, 2);
+		int second = digits(s, 17, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			return INVALID;
+		}
+		
+		int i = 19;
+		int millis = 0;
+		if (s.charAt(i) == '.') {
+			int start = ++i;
+			int scale = 100;
+			while (i < length && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+				millis += (s.charAt(i) - '0') * scale;
+				scale /= 10;
+				i++;
+			}
+			// Joda reads up to nine digits and keeps the milliseconds
+			if (i == start || i - start > 9) {
+				return INVALID;
+			}
+		}
+		
+		// without an offset Joda uses the default zone, leave that to it
+		if (i >= length) {
+			return INVALID;
+		}
+		int offsetMinutes;
+		char sign = s.charAt(i);
+		int rest = length - i - 1;
+		if (sign == 'Z' && rest == 0) {
+			offsetMinutes = 0;
+		}
+		else if (sign == '+' || sign == '-') {
+			int offsetHours = digits(s, i + 1, 2);
+			int offsetMinute;
+			if (rest == 2) {
+				offsetMinute = 0;
+			}
+			else if (rest == 5 && s.charAt(i + 3) == ':') {
+				offsetMinute = digits(s, i + 4, 2);
+			}
+			else if (rest == 4) {
+				offsetMinute = digits(s, i + 3, 2);
+			}
+			else {
+				return INVALID;
+			}
+			if (offsetHours < 0 || offsetHours > 23 || offsetMinute < 0 || offsetMinute > 59) {
+				return INVALID;
+			}
+			offsetMinutes = (sign == '-' ? -1 : 1) * (offsetHours * 60 + offsetMinute);
+		}
+		else {
+			return INVALID;
+		}
+		
+		long days = daysFromCivil(year, month, day);
+		return ((days * 24 + hour) * 60 + minute - offsetMinutes) * 60000L + second * 1000L + millis;
+	}
+	
+	/** the value of count decimal digits at offset, or -1 */
+	private static int digits(String s, int offset, int count) {
+		if (offset + count > s.length()) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+	
+	private static int daysInMonth(int year, int month) {
+		if (month == 2) {
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		}
+		return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+	}
+	
+	/** days since 1970-01-01 in the proleptic Gregorian calendar */
+	private static long daysFromCivil(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
 }
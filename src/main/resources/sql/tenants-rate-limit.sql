@@ -0,0 +1,6 @@
+-- Per tenant rate limit overrides read by DatabaseKeyManager (Tenant.rateLimit,
+-- Tenant.rateLimitBurst). Run once against an existing tenants table before
+-- upgrading; NULL keeps the openlrs.rateLimit defaults.
+ALTER TABLE tenants
+  ADD COLUMN rate_limit DOUBLE NULL,
+  ADD COLUMN rate_limit_burst INT NULL;
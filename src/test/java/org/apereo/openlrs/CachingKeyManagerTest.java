@@ -0,0 +1,62 @@
+package org.apereo.openlrs;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apereo.openlrs.exceptions.NotFoundException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CachingKeyManagerTest {
+
+	private KeyManager delegate;
+	private CachingKeyManager keyManager;
+
+	@Before
+	public void setup() {
+		delegate = mock(KeyManager.class);
+		keyManager = new CachingKeyManager();
+		ReflectionTestUtils.setField(keyManager, "ttlSeconds", 60L);
+		ReflectionTestUtils.setField(keyManager, "negativeTtlSeconds", 10L);
+		ReflectionTestUtils.setField(keyManager, "maxSize", 100L);
+		keyManager.init(delegate);
+	}
+
+	@Test
+	public void foundKeysAreLoadedOnce() {
+		Tenant tenant = new Tenant();
+		tenant.setConsumerKey("key");
+		when(delegate.getTenantForKey("key")).thenReturn(tenant);
+		when(delegate.getSecretForKey("key")).thenReturn("secret");
+
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals("secret", keyManager.getSecretForKey("key"));
+			Assert.assertSame(tenant, keyManager.getTenantForKey("key"));
+		}
+		verify(delegate, times(1)).getTenantForKey("key");
+
+		keyManager.evict("key");
+		keyManager.getTenantForKey("key");
+		verify(delegate, times(2)).getTenantForKey("key");
+	}
+
+	@Test
+	public void unknownKeysAreCachedToo() {
+		when(delegate.getTenantForKey("unknown")).thenThrow(new NotFoundException("No tenant found for key: unknown"));
+
+		for (int i = 0; i < 3; i++) {
+			try {
+				keyManager.getTenantForKey("unknown");
+				Assert.fail();
+			}
+			catch (NotFoundException e) {
+				Assert.assertEquals("No tenant found for key: unknown", e.getMessage());
+			}
+		}
+		verify(delegate, times(1)).getTenantForKey("unknown");
+	}
+}
@@ -0,0 +1,42 @@
+package org.apereo.openlrs;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryNonceStoreTest {
+
+	private static final long NOW = 1466435259L;
+
+	private InMemoryNonceStore nonceStore;
+
+	@Before
+	public void setup() {
+		nonceStore = new InMemoryNonceStore();
+		nonceStore.init(300);
+	}
+
+	@Test
+	public void nonceIsAcceptedOnce() {
+		Assert.assertTrue(nonceStore.checkAndRecord("key", NOW, "abc", NOW));
+		Assert.assertFalse(nonceStore.checkAndRecord("key", NOW, "abc", NOW + 10));
+		Assert.assertTrue(nonceStore.checkAndRecord("other", NOW, "abc", NOW));
+		Assert.assertTrue(nonceStore.checkAndRecord("key", NOW + 1, "abc", NOW));
+	}
+
+	@Test
+	public void timestampOutsideWindowIsRejected() {
+		Assert.assertFalse(nonceStore.checkAndRecord("key", NOW - 301, "abc", NOW));
+		Assert.assertFalse(nonceStore.checkAndRecord("key", NOW + 301, "abc", NOW));
+		Assert.assertTrue(nonceStore.checkAndRecord("key", NOW - 300, "abc", NOW));
+	}
+
+	@Test
+	public void slotsAreReusedOnceTheWindowHasPassed() {
+		for (long now = NOW; now < NOW + 3600; now += 7) {
+			Assert.assertTrue(nonceStore.checkAndRecord("key", now, "n" + now, now));
+			Assert.assertFalse(nonceStore.checkAndRecord("key", now, "n" + now, now));
+		}
+	}
+
+}
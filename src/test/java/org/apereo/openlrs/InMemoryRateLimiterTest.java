@@ -0,0 +1,54 @@
+package org.apereo.openlrs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryRateLimiterTest {
+
+	private static final long NOW = TimeUnit.HOURS.toNanos(1);
+
+	private InMemoryRateLimiter rateLimiter;
+
+	@Before
+	public void setup() {
+		rateLimiter = new InMemoryRateLimiter();
+		rateLimiter.init(10, 5);
+	}
+
+	@Test
+	public void burstIsAdmittedThenTheRate() {
+		Tenant tenant = tenant(1);
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals(0, rateLimiter.tryAcquire(tenant, NOW));
+		}
+		Assert.assertEquals(100, rateLimiter.tryAcquire(tenant, NOW));
+		Assert.assertEquals(50, rateLimiter.tryAcquire(tenant, NOW + TimeUnit.MILLISECONDS.toNanos(50)));
+		Assert.assertEquals(0, rateLimiter.tryAcquire(tenant, NOW + TimeUnit.MILLISECONDS.toNanos(100)));
+		Assert.assertEquals(100, rateLimiter.tryAcquire(tenant, NOW + TimeUnit.MILLISECONDS.toNanos(100)));
+
+		Assert.assertEquals("other tenants keep their own bucket", 0, rateLimiter.tryAcquire(tenant(2), NOW));
+	}
+
+	@Test
+	public void tenantLimitsOverrideTheDefaults() {
+		Tenant tenant = tenant(1);
+		tenant.setRateLimit(1d);
+		tenant.setRateLimitBurst(1);
+		Assert.assertEquals(0, rateLimiter.tryAcquire(tenant, NOW));
+		Assert.assertEquals(1000, rateLimiter.tryAcquire(tenant, NOW));
+
+		tenant.setRateLimit(0d);
+		Assert.assertEquals(0, rateLimiter.tryAcquire(tenant, NOW));
+		Assert.assertEquals(0, rateLimiter.tryAcquire(tenant, NOW));
+	}
+
+	private static Tenant tenant(long id) {
+		Tenant tenant = new Tenant();
+		tenant.setId(id);
+		return tenant;
+	}
+
+}
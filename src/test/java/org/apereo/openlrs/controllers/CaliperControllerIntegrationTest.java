@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.controllers;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apereo.openlrs.Application;
+import org.apereo.openlrs.OpenLRSAuthenticationFilter;
+import org.apereo.openlrs.storage.Reader;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Posts Caliper envelopes through the streaming reader.
+ */
+@ActiveProfiles("test")
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@SpringApplicationConfiguration(classes=Application.class)
+public class CaliperControllerIntegrationTest {
+	MockMvc mockMvc;
+	
+	@Autowired WebApplicationContext wac;
+	@Autowired OpenLRSAuthenticationFilter filter;
+	@Autowired Reader reader;
+	
+	private String basic = "Basic " + new String(Base64.encodeBase64("openlrs:openlrs".getBytes()));
+	
+	@Before
+	public void setup() {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac)
+				.addFilter(filter, "/v1/caliper")
+				.build();
+	}
+
+	@Test
+	public void thatEnvelopeDataIsSavedWhateverTheFieldOrder() throws Exception {
+		String envelope = "{\"data\":[" + event("a") + "," + event("b") + "," + event("c") + "],"
+				+ "\"sensor\":\"https://lms.example.edu/sensor\",\"sendTime\":\"2015-09-15T11:05:01.000Z\"}";
+		this.mockMvc.perform(
+				post("/v1/caliper")
+					.header("Authorization", basic)
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(envelope))
+					.andDo(print())
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$", hasSize(3)));
+	}
+	
+	@Test
+	public void thatSingleEventInPlaceOfDataArrayIsAccepted() throws Exception {
+		String envelope = "{\"sensor\":\"https://lms.example.edu/sensor\",\"extra\":{\"nested\":[1,2]},\"data\":" + event("d") + "}";
+		this.mockMvc.perform(
+				post("/v1/caliper")
+					.header("Authorization", basic)
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(envelope))
+					.andDo(print())
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$", hasSize(1)));
+	}
+	
+	@Test
+	public void thatNonObjectInDataIsRejected() throws Exception {
+		String envelope = "{\"data\":[" + event("e") + ",42," + event("f") + "]}";
+		this.mockMvc.perform(
+				post("/v1/caliper")
+					.header("Authorization", basic)
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(envelope))
+					.andDo(print())
+					.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void thatRawStatementCannotBePostedOrRead() throws Exception {
+		String raw = event("raw");
+		raw = raw.substring(0, raw.length() - 1) + ",\"rawStatement\":\"{not json\"}";
+		this.mockMvc.perform(
+				post("/v1/caliper")
+					.header("Authorization", basic)
+					.contentType(MediaType.APPLICATION_JSON)
+					.content("{\"data\":[" + raw + "]}"))
+					.andExpect(status().isOk());
+		Assert.assertNull(reader.findByTenantIdAndEventId("0", "urn:uuid:raw").getRawStatement());
+
+		this.mockMvc.perform(
+				get("/v1/caliper")
+					.param("id", "urn:uuid:raw")
+					.header("Authorization", basic)
+					.contentType(MediaType.APPLICATION_JSON))
+					.andDo(print())
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$.content[0].id").value("urn:uuid:raw"))
+					.andExpect(jsonPath("$.content[0].rawStatement").doesNotExist());
+	}
+
+	@Test
+	public void thatCursorLimitMustBePositive() throws Exception {
+		for (String limit : new String[] { "0", "-5", "ten" }) {
+			this.mockMvc.perform(
+					get("/v1/caliper")
+						.param("cursor", "")
+						.param("limit", limit)
+						.header("Authorization", basic)
+						.contentType(MediaType.APPLICATION_JSON))
+						.andExpect(status().isBadRequest());
+		}
+	}
+
+	private String event(String id) {
+		return "{\"@context\":\"http://purl.imsglobal.org/ctx/caliper/v1/Context\","
+				+ "\"@type\":\"http://purl.imsglobal.org/caliper/v1/NavigationEvent\","
+				+ "\"id\":\"urn:uuid:" + id + "\","
+				+ "\"actor\":{\"@id\":\"https://lms.example.edu/users/1\",\"@type\":\"http://purl.imsglobal.org/caliper/v1/lis/Person\"},"
+				+ "\"action\":\"http://purl.imsglobal.org/vocab/caliper/v1/action#NavigatedTo\","
+				+ "\"eventTime\":\"2015-09-15T10:15:00.000Z\"}";
+	}
+}
@@ -15,9 +15,11 @@
  */
 package org.apereo.openlrs.controllers;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -26,6 +28,7 @@ import org.apereo.openlrs.Application;
 import org.apereo.openlrs.OpenLRSAuthenticationFilter;
 import org.apereo.openlrs.controllers.xapi.XApiHeaderFilter;
 import org.apereo.openlrs.controllers.xapi.XApiRequestValidationFilter;
+import org.apereo.openlrs.controllers.xapi.XApiApiController;
 import org.apereo.openlrs.controllers.xapi.XApiConstants;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,6 +40,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
@@ -56,6 +60,7 @@ public class StatementControllerIntegrationTest {
 	@Autowired OpenLRSAuthenticationFilter filter;
 	@Autowired XApiHeaderFilter xapiHeaderFilter;
 	@Autowired XApiRequestValidationFilter xapiRequestValidationFilter;
+	@Autowired XApiApiController xapiApiController;
 	
 	@Before
 	public void setup() {
@@ -317,4 +322,43 @@ public class StatementControllerIntegrationTest {
 			.andExpect(status().isBadRequest())
 			.andExpect(header().string("X-Experience-API-Version", "1.0.1"));
 	}
+	
+	@Test
+	public void shouldReturnRawStatementAsPosted() throws Exception {
+		String body = "{\"id\":\"5f3c1a6e-3b9e-4f3a-9d2c-7a1e2b3c4d5e\","+
+				"\"actor\":{\"objectType\": \"Agent\",\"name\":\"Project Tin Can API\", "+
+				"\"mbox\":\"mailto:user@example.com\"}, "+
+				"\"verb\":{\"id\":\"http://adlnet.gov/expapi/verbs/created\","+
+				"\"display\":{\"en-US\":\"created\" }},"+
+				"\"object\":{\"id\":\"http://example.adlnet.gov/xapi/example/simplestatement\"},"+
+				"\"timestamp\":\"2016-06-20T17:47:39.000+02:00\","+
+				"\"version\":\"1.0.1\"}";
+
+		String basic = "openlrs:openlrs";
+		final byte[] encodedBytes = Base64.encodeBase64(basic.getBytes());
+		ReflectionTestUtils.setField(xapiApiController, "rawStatements", true);
+		try {
+			this.mockMvc.perform(
+			post("/v1/xAPI/statements")
+				.header("Authorization", "Basic " + new String(encodedBytes))
+				.header(XApiConstants.XAPI_VERSION_HEADER, "1.0.1")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(body))
+				.andExpect(status().isOk());
+			
+			this.mockMvc.perform(
+			get("/v1/xAPI/statements")
+				.param("statementId", "5f3c1a6e-3b9e-4f3a-9d2c-7a1e2b3c4d5e")
+				.header("Authorization", "Basic " + new String(encodedBytes))
+				.header(XApiConstants.XAPI_VERSION_HEADER, "1.0.1")
+				.accept(MediaType.APPLICATION_JSON))
+				.andDo(print())
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("{\"statements\":[{\"id\":\"5f3c1a6e-3b9e-4f3a-9d2c-7a1e2b3c4d5e\",")))
+				.andExpect(content().string(containsString("\"timestamp\":\"2016-06-20T17:47:39.000+02:00\",\"version\":\"1.0.1\"}]}")));
+		}
+		finally {
+			ReflectionTestUtils.setField(xapiApiController, "rawStatements", false);
+		}
+	}
 }
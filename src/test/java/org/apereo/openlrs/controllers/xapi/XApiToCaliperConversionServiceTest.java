@@ -0,0 +1,87 @@
+package org.apereo.openlrs.controllers.xapi;
+
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.xapi.Statement;
+import org.apereo.openlrs.model.xapi.XApiActor;
+import org.apereo.openlrs.model.xapi.XApiObject;
+import org.apereo.openlrs.model.xapi.XApiObjectDefinition;
+import org.apereo.openlrs.model.xapi.XApiVerb;
+import org.apereo.openlrs.utils.TimestampUtils;
+import org.imsglobal.caliper.actions.Action;
+import org.imsglobal.caliper.entities.DigitalResourceType;
+import org.imsglobal.caliper.entities.EntityType;
+import org.imsglobal.caliper.events.EventType;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XApiToCaliperConversionServiceTest {
+
+	private XApiToCaliperConversionService service = new XApiToCaliperConversionService();
+
+	@Test
+	public void timestampsParseLikeJoda() {
+		String[] timestamps = {
+				"2016-06-20T15:47:39Z", "2016-06-20T15:47:39.123Z", "2016-06-20T15:47:39.1+02:00",
+				"2016-06-20T15:47:39.123456789-05:30", "2016-02-29T23:59:59.999+0100", "1969-12-31T23:59:59.5+01",
+				"2000-01-01T00:00:00-00:00", "2016-06-20T15:47:39", "2016-06-20T15:47:39.1234567891Z",
+				"2015-02-29T10:00:00Z", "2016-06-20T24:00:00Z", "2016-06-20 15:47:39Z", "2016-06-20T15:47:39+2:00", "2016-06-20"};
+		for (String timestamp : timestamps) {
+			DateTime expected = null;
+			try {
+				expected = new DateTime(timestamp);
+			}
+			catch (IllegalArgumentException e) {
+				try {
+					TimestampUtils.parseDateTime(timestamp);
+					Assert.fail(timestamp);
+				}
+				catch (IllegalArgumentException expectedFailure) {
+					continue;
+				}
+			}
+			Assert.assertEquals(timestamp, expected, TimestampUtils.parseDateTime(timestamp));
+		}
+	}
+
+	@Test
+	public void tenantMappingsDoNotLeak() throws Exception {
+		Statement statement = statement("http://example.com/verbs/watched", "http://adlnet.gov/expapi/activities/media");
+
+		Event event = service.fromXapi(statement, "1");
+		Assert.assertEquals(EventType.EVENT.getValue(), event.getType());
+		Assert.assertEquals(DigitalResourceType.MEDIA_OBJECT.getValue(), event.getObject().getType());
+		Assert.assertEquals("http://adlnet.gov/expapi/activities/media", service.toXapi(event).getObject().getDefinition().getType());
+
+		service.registerVerb("1", "http://example.com/verbs/watched", Action.PAUSED);
+		service.registerObjectType("1", "http://example.com/activities/video", EntityType.DIGITAL_RESOURCE);
+
+		Assert.assertEquals(EventType.MEDIA.getValue(), service.fromXapi(statement, "1").getType());
+		Assert.assertEquals(EventType.EVENT.getValue(), service.fromXapi(statement, "2").getType());
+		Assert.assertEquals(EventType.EVENT.getValue(), service.fromXapi(statement).getType());
+
+		Event video = service.fromXapi(statement("http://example.com/verbs/watched", "http://example.com/activities/video"), "1");
+		Assert.assertEquals(EntityType.DIGITAL_RESOURCE.getValue(), video.getObject().getType());
+		Assert.assertEquals("http://example.com/activities/video", service.toXapi(video, "1").getObject().getDefinition().getType());
+	}
+
+	private static Statement statement(String verbId, String type) {
+		XApiActor actor = new XApiActor();
+		actor.setMbox("mailto:user@example.com");
+		XApiVerb verb = new XApiVerb();
+		verb.setId(verbId);
+		XApiObjectDefinition definition = new XApiObjectDefinition();
+		definition.setType(type);
+		XApiObject object = new XApiObject();
+		object.setId("http://example.com/activities/1");
+		object.setDefinition(definition);
+
+		Statement statement = new Statement();
+		statement.setActor(actor);
+		statement.setVerb(verb);
+		statement.setObject(object);
+		statement.setTimestamp("2016-06-20T15:47:39.123Z");
+		return statement;
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.apereo.openlrs.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class MetricsTest {
+
+	@Test
+	public void percentilesComeFromEveryRecordedValue() {
+		Metrics metrics = new Metrics();
+		for (int i = 1; i <= 1000; i++) {
+			metrics.recordValue("size", i, "tenant", "1");
+		}
+
+		List<Map<String, Object>> snapshot = metrics.snapshot();
+		Assert.assertEquals(1, snapshot.size());
+		Map<String, Object> meter = snapshot.get(0);
+		Assert.assertEquals(1000L, meter.get("count"));
+		Assert.assertEquals(500.5, (Double) meter.get("mean"), 0.001);
+		Assert.assertEquals(500, (Double) meter.get("p50"), 500 * 0.016);
+		Assert.assertEquals(990, (Double) meter.get("p99"), 990 * 0.016);
+		Assert.assertEquals(1000, (Double) meter.get("max"), 1000 * 0.016);
+	}
+
+	@Test
+	public void tenantsBeyondTheLimitAreFolded() {
+		Metrics metrics = new Metrics();
+		ReflectionTestUtils.setField(metrics, "maxMeters", 2);
+		metrics.recordTime("openlrs.storage", 1000, "method", "save", "tenant", "1");
+		metrics.recordTime("openlrs.storage", 1000, "method", "save", "tenant", "2");
+		metrics.recordTime("openlrs.storage", 1000, "method", "save", "tenant", "3");
+		metrics.recordTime("openlrs.storage", 1000, "method", "save", "tenant", "4");
+		metrics.recordTime("openlrs.storage", 1000, "method", "save", "tenant", "1");
+
+		List<Map<String, Object>> snapshot = metrics.snapshot();
+		Assert.assertEquals(3, snapshot.size());
+		for (Map<String, Object> meter : snapshot) {
+			String tenant = ((Map<?, ?>) meter.get("tags")).get("tenant").toString();
+			Assert.assertEquals(tenant, "2".equals(tenant) ? 1L : 2L, meter.get("count"));
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.async;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apereo.openlrs.exceptions.TooManyRequestsException;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.inmemory.InMemoryReaderWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.repository.InMemoryMetricRepository;
+import org.springframework.boot.actuate.metrics.writer.DefaultCounterService;
+import org.springframework.boot.actuate.metrics.writer.DefaultGaugeService;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Drives the queue and its workers directly against the in-memory store.
+ */
+public class AsyncEventWriterTest {
+
+	private AsyncEventWriter asyncEventWriter;
+	private InMemoryReaderWriter readerWriter;
+	private CountDownLatch release;
+
+	@Before
+	public void setup() {
+		readerWriter = new InMemoryReaderWriter();
+		release = new CountDownLatch(0);
+		asyncEventWriter = writerWithCapacity(100, readerWriter);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		release.countDown();
+		asyncEventWriter.stop();
+	}
+
+	@Test
+	public void queuedEventsReachTheWriter() throws Exception {
+		String tenantId = UUID.randomUUID().toString();
+		asyncEventWriter.enqueue(events(25), tenantId);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (readerWriter.findByTenantId(tenantId, new PageRequest(0, 100)) == null
+				|| readerWriter.findByTenantId(tenantId, new PageRequest(0, 100)).getTotalElements() < 25) {
+			Assert.assertTrue("events were not written in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void fullQueueRejectsTheWholeRequest() throws Exception {
+		asyncEventWriter.stop();
+		release = new CountDownLatch(1);
+		final CountDownLatch blocked = release;
+		// a writer that never finishes keeps the queue from draining
+		asyncEventWriter = writerWithCapacity(10, new InMemoryReaderWriter() {
+			@Override
+			public List<Event> saveAll(Collection<Event> events, String tenantId) {
+				try {
+					blocked.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new ArrayList<Event>(events);
+			}
+		});
+
+		String tenantId = UUID.randomUUID().toString();
+		asyncEventWriter.enqueue(events(1), tenantId);
+		Thread.sleep(100);
+		asyncEventWriter.enqueue(events(8), tenantId);
+		try {
+			asyncEventWriter.enqueue(events(5), tenantId);
+			Assert.fail("expected the queue to be full");
+		}
+		catch (TooManyRequestsException e) {
+			// expected
+		}
+		Assert.assertEquals(8, asyncEventWriter.getQueueDepth());
+	}
+
+	@Test
+	public void failedBatchIsRetried() throws Exception {
+		asyncEventWriter.stop();
+		final AtomicInteger attempts = new AtomicInteger();
+		// fails twice, then saves
+		asyncEventWriter = writerWithCapacity(100, new InMemoryReaderWriter() {
+			@Override
+			public List<Event> saveAll(Collection<Event> events, String tenantId) {
+				if (attempts.incrementAndGet() <= 2) {
+					throw new IllegalStateException("backend unavailable");
+				}
+				return super.saveAll(events, tenantId);
+			}
+		});
+		readerWriter = (InMemoryReaderWriter) ReflectionTestUtils.getField(asyncEventWriter, "writer");
+
+		String tenantId = UUID.randomUUID().toString();
+		asyncEventWriter.enqueue(events(5), tenantId);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (readerWriter.findByTenantId(tenantId, new PageRequest(0, 100)) == null
+				|| readerWriter.findByTenantId(tenantId, new PageRequest(0, 100)).getTotalElements() < 5) {
+			Assert.assertTrue("events were not written in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(3, attempts.get());
+	}
+
+	@Test
+	public void batchIsDroppedAfterMaxRetries() throws Exception {
+		asyncEventWriter.stop();
+		final AtomicInteger attempts = new AtomicInteger();
+		asyncEventWriter = writerWithCapacity(100, new InMemoryReaderWriter() {
+			@Override
+			public List<Event> saveAll(Collection<Event> events, String tenantId) {
+				attempts.incrementAndGet();
+				throw new IllegalStateException("backend unavailable");
+			}
+		});
+
+		asyncEventWriter.enqueue(events(5), UUID.randomUUID().toString());
+		asyncEventWriter.stop();
+		// the first attempt plus maxRetries
+		Assert.assertEquals(3, attempts.get());
+	}
+
+	private AsyncEventWriter writerWithCapacity(int capacity, InMemoryReaderWriter writer) {
+		AsyncEventWriter aew = new AsyncEventWriter();
+		ReflectionTestUtils.setField(aew, "queueCapacity", capacity);
+		ReflectionTestUtils.setField(aew, "batchSize", 10);
+		ReflectionTestUtils.setField(aew, "flushIntervalMillis", 20L);
+		ReflectionTestUtils.setField(aew, "workers", 1);
+		ReflectionTestUtils.setField(aew, "maxRetries", 2);
+		ReflectionTestUtils.setField(aew, "retryBackoffMillis", 1L);
+		ReflectionTestUtils.setField(aew, "writer", writer);
+		ReflectionTestUtils.setField(aew, "gaugeService", new DefaultGaugeService(new InMemoryMetricRepository()));
+		ReflectionTestUtils.setField(aew, "counterService", new DefaultCounterService(new InMemoryMetricRepository()));
+		aew.start();
+		return aew;
+	}
+
+	private List<Event> events(int count) {
+		List<Event> events = new ArrayList<Event>(count);
+		for (int i = 0; i < count; i++) {
+			events.add(new Event(UUID.randomUUID().toString(), null, null, null, null, null, null, null, null, null, null));
+		}
+		return Collections.unmodifiableList(events);
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apereo.openlrs.model.event.Actor;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.Group;
+import org.apereo.openlrs.storage.CursorPage;
+import org.apereo.openlrs.storage.EventQuery;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * Exercises the indexes and locking of the in-memory store without a Spring context.
+ */
+public class InMemoryReaderWriterTest {
+
+	private InMemoryReaderWriter readerWriter;
+	private String tenantId;
+
+	@Before
+	public void setup() {
+		readerWriter = new InMemoryReaderWriter();
+		// the store is static, so isolate each test in its own tenant
+		tenantId = UUID.randomUUID().toString();
+	}
+
+	@Test
+	public void findByEventIdReturnsFirstSavedEvent() {
+		Event first = event("event-1", "student-1", "course-1");
+		readerWriter.save(first, tenantId);
+		readerWriter.save(event("event-1", "student-2", "course-1"), tenantId);
+
+		Assert.assertSame(first, readerWriter.findByTenantIdAndEventId(tenantId, "event-1"));
+		Assert.assertNull(readerWriter.findByTenantIdAndEventId(tenantId, "missing"));
+	}
+
+	@Test
+	public void findExistingEventIdsChecksABatch() {
+		readerWriter.save(event("event-1", "student-1", "course-1"), tenantId);
+		readerWriter.save(event("event-3", "student-1", "course-1"), tenantId);
+
+		Set<String> existing = readerWriter.findExistingEventIds(tenantId, Arrays.asList("event-1", "event-2", "event-3"));
+		Assert.assertEquals(new HashSet<>(Arrays.asList("event-1", "event-3")), existing);
+		Assert.assertTrue(readerWriter.findExistingEventIds("unknown-tenant", Arrays.asList("event-1")).isEmpty());
+	}
+
+	@Test
+	public void findByUserAndContextUseArrivalOrder() {
+		List<Event> events = new ArrayList<>();
+		events.add(event("a", "student-1", "http://lms/course-1"));
+		events.add(event("b", "student-2", "http://lms/course-2"));
+		events.add(event("c", "student-1", "http://lms/course-1/section-1"));
+		events.add(event("d", "student-1", "http://lms/course-2"));
+		readerWriter.saveAll(events, tenantId);
+
+		Page<Event> byUser = readerWriter.findByTenantIdAndUser(tenantId, "student-1", new PageRequest(0, 10));
+		Assert.assertEquals(3, byUser.getContent().size());
+		Assert.assertEquals("a", byUser.getContent().get(0).getId());
+		Assert.assertEquals("d", byUser.getContent().get(2).getId());
+
+		Page<Event> byContext = readerWriter.findByTenantIdAndContext(tenantId, "course-1", new PageRequest(0, 10));
+		Assert.assertEquals(2, byContext.getContent().size());
+		Assert.assertEquals("a", byContext.getContent().get(0).getId());
+		Assert.assertEquals("c", byContext.getContent().get(1).getId());
+	}
+
+	@Test
+	public void pagesAreSlicedAndCarryTheTotal() {
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			events.add(event(String.valueOf(i), "student-" + (i % 2), "course-1"));
+		}
+		readerWriter.saveAll(events, tenantId);
+
+		Page<Event> page = readerWriter.findByTenantId(tenantId, new PageRequest(2, 10));
+		Assert.assertEquals(5, page.getNumberOfElements());
+		Assert.assertEquals(25, page.getTotalElements());
+		Assert.assertEquals(3, page.getTotalPages());
+		Assert.assertEquals("20", page.getContent().get(0).getId());
+
+		Page<Event> byUser = readerWriter.findByTenantIdAndUser(tenantId, "student-1", new PageRequest(1, 5));
+		Assert.assertEquals(12, byUser.getTotalElements());
+		Assert.assertEquals("11", byUser.getContent().get(0).getId());
+
+		Page<Event> pastTheEnd = readerWriter.findByTenantIdAndContext(tenantId, "course-1", new PageRequest(5, 10));
+		Assert.assertFalse(pastTheEnd.hasContent());
+		Assert.assertEquals(25, pastTheEnd.getTotalElements());
+	}
+
+	@Test
+	public void cursorWalksEveryEventOnce() {
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			events.add(event(String.valueOf(i), "student-1", "course-1"));
+		}
+		readerWriter.saveAll(events, tenantId);
+
+		List<String> seen = new ArrayList<>();
+		String cursor = null;
+		do {
+			CursorPage page = readerWriter.findByTenantId(tenantId, cursor, 10);
+			for (Event e : page.getContent()) {
+				seen.add(e.getId());
+			}
+			cursor = page.getNext();
+		} while (cursor != null);
+
+		Assert.assertEquals(25, seen.size());
+		Assert.assertEquals("0", seen.get(0));
+		Assert.assertEquals("24", seen.get(24));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void malformedCursorIsRejected() {
+		readerWriter.findByTenantId(tenantId, "not-a-cursor", 10);
+	}
+
+	@Test
+	public void concurrentSavesAreNotLost() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 1000; i++) {
+			final String id = String.valueOf(i);
+			executor.submit(() -> readerWriter.save(event(id, "student-" + (Integer.valueOf(id) % 10), "course-1"), tenantId));
+		}
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		Assert.assertEquals(1000, readerWriter.findByTenantId(tenantId, new PageRequest(0, 1000)).getTotalElements());
+		Assert.assertEquals(100, readerWriter.findByTenantIdAndUser(tenantId, "student-3", new PageRequest(0, 1000)).getTotalElements());
+		Assert.assertNotNull(readerWriter.findByTenantIdAndEventId(tenantId, "999"));
+	}
+
+	@Test
+	public void findByQueryCombinesFiltersAndOrdersOnStoredTime() {
+		DateTime start = new DateTime(2015, 9, 1, 0, 0);
+		List<Event> events = new ArrayList<Event>();
+		for (int i = 0; i < 100; i++) {
+			Actor actor = new Actor("student-" + (i % 4), null, null, null, null, null);
+			Group group = new Group("course-1", null, null, null, null, null, null);
+			String action = (i % 2 == 0) ? "viewed" : "completed";
+			events.add(new Event(String.valueOf(i), null, null, start, start.plusMinutes(i), actor, action, null, null, group, null));
+		}
+		readerWriter.saveAll(events, tenantId);
+
+		// student-0 only ever has even, "viewed" events
+		EventQuery query = EventQuery.builder().actor("student-0").action("viewed")
+				.since(start.plusMinutes(10)).until(start.plusMinutes(40)).limit(5).build();
+		List<Event> found = readerWriter.findByQuery(tenantId, query);
+		Assert.assertEquals(Arrays.asList("40", "36", "32", "28", "24"), ids(found));
+
+		query = EventQuery.builder().actor("student-0").action("viewed")
+				.since(start.plusMinutes(10)).until(start.plusMinutes(40)).ascending(true).build();
+		Assert.assertEquals(Arrays.asList("12", "16", "20", "24", "28", "32", "36", "40"), ids(readerWriter.findByQuery(tenantId, query)));
+
+		Assert.assertTrue(readerWriter.findByQuery(tenantId, EventQuery.builder().actor("student-1").action("viewed").build()).isEmpty());
+	}
+
+	private List<String> ids(List<Event> events) {
+		List<String> ids = new ArrayList<String>();
+		for (Event event : events) {
+			ids.add(event.getId());
+		}
+		return ids;
+	}
+
+	private Event event(String id, String actorId, String groupId) {
+		Actor actor = new Actor(actorId, null, null, actorId, null, null);
+		Group group = new Group(groupId, null, null, null, null, null, null);
+		return new Event(id, null, null, new DateTime(), new DateTime(), actor, null, null, null, group, null);
+	}
+}
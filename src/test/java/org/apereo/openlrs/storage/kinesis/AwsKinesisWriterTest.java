@@ -0,0 +1,115 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.kinesis;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apereo.openlrs.model.event.Actor;
+import org.apereo.openlrs.model.event.Event;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+
+/**
+ * Checks request splitting, partial-failure retries and partition keys
+ * against a mocked Kinesis client.
+ */
+public class AwsKinesisWriterTest {
+
+	private AwsKinesisWriter writer;
+	private AmazonKinesisClient kinesisClient;
+
+	@Before
+	public void setup() {
+		kinesisClient = mock(AmazonKinesisClient.class);
+		writer = new AwsKinesisWriter();
+		ReflectionTestUtils.setField(writer, "kinesisClient", kinesisClient);
+		ReflectionTestUtils.setField(writer, "stream", "openlrs");
+		ReflectionTestUtils.setField(writer, "partitionKeyStrategy", PartitionKeyStrategy.TENANT);
+		ReflectionTestUtils.setField(writer, "maxAttempts", 3);
+		ReflectionTestUtils.setField(writer, "backoffMillis", 1L);
+		ReflectionTestUtils.setField(writer, "maxBackoffMillis", 1L);
+	}
+
+	@Test
+	public void batchesAreSplitAtFiveHundredRecords() {
+		when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(new PutRecordsResult().withFailedRecordCount(0));
+
+		writer.saveAll(events(1200), "tenant");
+
+		ArgumentCaptor<PutRecordsRequest> requests = ArgumentCaptor.forClass(PutRecordsRequest.class);
+		verify(kinesisClient, times(3)).putRecords(requests.capture());
+		Assert.assertEquals(500, requests.getAllValues().get(0).getRecords().size());
+		Assert.assertEquals(200, requests.getAllValues().get(2).getRecords().size());
+	}
+
+	@Test
+	public void onlyFailedRecordsAreRetried() {
+		when(kinesisClient.putRecords(any(PutRecordsRequest.class)))
+			.thenReturn(new PutRecordsResult().withFailedRecordCount(1).withRecords(
+					new PutRecordsResultEntry().withShardId("shard-1"),
+					new PutRecordsResultEntry().withErrorCode("ProvisionedThroughputExceededException"),
+					new PutRecordsResultEntry().withShardId("shard-1")))
+			.thenReturn(new PutRecordsResult().withFailedRecordCount(0));
+
+		writer.saveAll(events(3), "tenant");
+
+		ArgumentCaptor<PutRecordsRequest> requests = ArgumentCaptor.forClass(PutRecordsRequest.class);
+		verify(kinesisClient, times(2)).putRecords(requests.capture());
+		Assert.assertEquals(1, requests.getAllValues().get(1).getRecords().size());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void persistentFailuresGiveUpAfterMaxAttempts() {
+		when(kinesisClient.putRecords(any(PutRecordsRequest.class)))
+			.thenReturn(new PutRecordsResult().withFailedRecordCount(1).withRecords(
+					new PutRecordsResultEntry().withErrorCode("InternalFailure")));
+
+		writer.saveAll(events(1), "tenant");
+	}
+
+	@Test
+	public void tenantActorKeysSpreadByLearner() {
+		Event event = events(1).get(0);
+		Assert.assertEquals("tenant", PartitionKeyStrategy.TENANT.partitionKey("tenant", event));
+		Assert.assertNotEquals("tenant", PartitionKeyStrategy.TENANT_ACTOR.partitionKey("tenant", event));
+		Assert.assertEquals(PartitionKeyStrategy.TENANT_ACTOR.partitionKey("tenant", event),
+				PartitionKeyStrategy.TENANT_ACTOR.partitionKey("tenant", events(1).get(0)));
+	}
+
+	private List<Event> events(int count) {
+		List<Event> events = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Actor actor = new Actor("student-1", null, null, "student-1", null, null);
+			events.add(new Event(String.valueOf(i), null, null, null, null, actor, null, null, null, null, null));
+		}
+		return events;
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.redis;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Starts the listener container against a connection whose subscribe
+ * blocks, as Jedis does.
+ */
+public class RedisPubSubConfigTest {
+
+	@Test
+	public void startReturnsWhileSubscribed() throws Exception {
+		final CountDownLatch subscribed = new CountDownLatch(1);
+		final CountDownLatch unsubscribed = new CountDownLatch(1);
+		RedisConnection connection = mock(RedisConnection.class);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				subscribed.countDown();
+				unsubscribed.await();
+				return null;
+			}
+		}).when(connection).subscribe(any(MessageListener.class), any(byte[][].class));
+		RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+		when(connectionFactory.getConnection()).thenReturn(connection);
+
+		RedisPubSubConfig config = new RedisPubSubConfig();
+		ReflectionTestUtils.setField(config, "instanceName", "test");
+		final RedisMessageListenerContainer container = config.container(connectionFactory,
+				new MessageListenerAdapter(new Object(), "onMessage"));
+		container.afterPropertiesSet();
+
+		ExecutorService starter = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> started = starter.submit(new Runnable() {
+				@Override
+				public void run() {
+					container.start();
+				}
+			});
+			started.get(5, TimeUnit.SECONDS);
+			Assert.assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+		}
+		finally {
+			unsubscribed.countDown();
+			starter.shutdownNow();
+			container.destroy();
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.redis;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apereo.openlrs.Application;
+import org.apereo.openlrs.model.event.Actor;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.Reader;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RedisPubSubWriterMessageReceiverTest {
+
+	private RedisPubSubWriterMessageReceiver receiver;
+	private Reader reader;
+	private ObjectMapper objectMapper = new Application().objectMapper();
+
+	@Captor
+	private ArgumentCaptor<Collection<Event>> tenant1;
+
+	@Captor
+	private ArgumentCaptor<Collection<Event>> tenant2;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		reader = mock(Reader.class);
+		receiver = new RedisPubSubWriterMessageReceiver();
+		ReflectionTestUtils.setField(receiver, "reader", reader);
+		ReflectionTestUtils.setField(receiver, "eventReader", objectMapper.reader(EventRedis.class));
+	}
+
+	@Test
+	public void batchIsSavedOncePerTenant() throws Exception {
+		Event raw = event("c");
+		raw.setRawStatement("{\"id\":\"c\"}");
+		receiver.save(Arrays.asList(message("1", "a"), message("2", "b"), "{not json",
+				objectMapper.writeValueAsString(new EventRedis("1", raw))));
+
+		verify(reader).saveAll(tenant1.capture(), eq("1"));
+		verify(reader).saveAll(tenant2.capture(), eq("2"));
+		verifyNoMoreInteractions(reader);
+		List<Event> events = new ArrayList<Event>(tenant1.getValue());
+		Assert.assertEquals("a", events.get(0).getId());
+		Assert.assertEquals("c", events.get(1).getId());
+		Assert.assertEquals("{\"id\":\"c\"}", events.get(1).getRawStatement());
+		Assert.assertEquals(1, tenant2.getValue().size());
+	}
+
+	private String message(String tenantId, String eventId) throws Exception {
+		return objectMapper.writeValueAsString(new EventRedis(tenantId, event(eventId)));
+	}
+
+	private Event event(String eventId) {
+		Actor actor = new Actor("https://lms.example.edu/users/1", null, "http://purl.imsglobal.org/caliper/v1/lis/Person", null, null, null);
+		Event event = new Event(eventId, null, "http://purl.imsglobal.org/caliper/v1/NavigationEvent", null, null, actor,
+				"http://purl.imsglobal.org/vocab/caliper/v1/action#NavigatedTo", null, null, null, null);
+		return event;
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.redis;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apereo.openlrs.Application;
+import org.apereo.openlrs.model.event.Actor;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.storage.Reader;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks which stream entries the consumer acknowledges against a mocked
+ * Reader.
+ */
+public class RedisStreamsConsumerTest {
+
+	private RedisStreamsConsumer consumer;
+	private Reader reader;
+	private ObjectMapper objectMapper = new Application().objectMapper();
+
+	@Captor
+	private ArgumentCaptor<Collection<Event>> saved;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		reader = mock(Reader.class);
+		consumer = new RedisStreamsConsumer();
+		ReflectionTestUtils.setField(consumer, "reader", reader);
+		ReflectionTestUtils.setField(consumer, "eventReader", objectMapper.reader(EventRedis.class));
+	}
+
+	@Test
+	public void onlySavedAndUnreadableEntriesAreAcknowledged() throws Exception {
+		doThrow(new RuntimeException("down")).when(reader).saveAll(anyCollectionOf(Event.class), eq("2"));
+
+		List<String> entries = new ArrayList<String>();
+		entries.addAll(Arrays.asList("1-0", entry("1", "a"), "1-1", entry("2", "b"), "1-2", "{not json",
+				"1-3", entry("1", "c")));
+
+		Assert.assertEquals(Arrays.asList("1-2", "1-0", "1-3"), consumer.save(entries));
+
+		verify(reader).saveAll(saved.capture(), eq("1"));
+		List<Event> events = new ArrayList<Event>(saved.getValue());
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals("c", events.get(1).getId());
+	}
+
+	private String entry(String tenantId, String eventId) throws Exception {
+		Actor actor = new Actor("https://lms.example.edu/users/1", null, "http://purl.imsglobal.org/caliper/v1/lis/Person", null, null, null);
+		Event event = new Event(eventId, null, "http://purl.imsglobal.org/caliper/v1/NavigationEvent", null, null, actor,
+				"http://purl.imsglobal.org/vocab/caliper/v1/action#NavigatedTo", null, null, null, null);
+		return objectMapper.writeValueAsString(new EventRedis(tenantId, event));
+	}
+
+}
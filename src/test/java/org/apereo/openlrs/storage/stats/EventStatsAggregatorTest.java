@@ -0,0 +1,147 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apereo.openlrs.model.event.Actor;
+import org.apereo.openlrs.model.event.Event;
+import org.apereo.openlrs.model.event.EventStats;
+import org.apereo.openlrs.model.event.Group;
+import org.apereo.openlrs.storage.inmemory.InMemoryReaderWriter;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class EventStatsAggregatorTest {
+
+	private EventStatsAggregator aggregator;
+	private InMemoryReaderWriter readerWriter;
+	private String tenantId;
+
+	@Before
+	public void setup() {
+		readerWriter = new InMemoryReaderWriter();
+		aggregator = new EventStatsAggregator();
+		ReflectionTestUtils.setField(aggregator, "reader", readerWriter);
+		tenantId = UUID.randomUUID().toString();
+	}
+
+	@Test
+	public void countsByGroupWeekAndStudent() {
+		DateTime monday = new DateTime(2015, 9, 14, 12, 0);
+		List<Event> events = new ArrayList<Event>();
+		events.add(event("s1", "course-1", monday));
+		events.add(event("s1", "course-1", monday.plusDays(2)));
+		events.add(event("s1", "course-1", monday.plusWeeks(1)));
+		events.add(event("s2", "course-1", monday));
+		events.add(event("s2", "course-2", monday));
+		// the first read loads the (empty) tenant, later saves are counted
+		Assert.assertEquals(0, aggregator.getStats(tenantId, "course-1").getTotal());
+		aggregator.add(events, tenantId);
+
+		EventStats stats = aggregator.getStats(tenantId, "course-1");
+		Assert.assertEquals(4, stats.getTotal());
+		Assert.assertEquals(Long.valueOf(3), stats.getMax());
+		Assert.assertEquals(Long.valueOf(3), stats.getTotalByWeekNumber().get("2015-09-14"));
+		Assert.assertEquals(Long.valueOf(1), stats.getTotalByWeekNumber().get("2015-09-21"));
+		Assert.assertEquals(3, stats.getStudentActivityStats().get("s1").getTotal());
+		Assert.assertEquals("name-s1", stats.getStudentActivityStats().get("s1").getStudentName());
+		Assert.assertEquals(Long.valueOf(2), stats.getStudentActivityStats().get("s1").getTotalByWeekNumber().get("2015-09-14"));
+
+		// group ids match with "contains" semantics, like the readers
+		Assert.assertEquals(5, aggregator.getStats(tenantId, "course-").getTotal());
+		Assert.assertEquals(0, aggregator.getStats(tenantId, "other").getTotal());
+	}
+
+	@Test
+	public void rebuildMatchesIncrementalCounts() {
+		List<Event> events = new ArrayList<Event>();
+		DateTime start = new DateTime(2015, 9, 1, 0, 0);
+		for (int i = 0; i < 2500; i++) {
+			events.add(event("s" + (i % 7), "course-" + (i % 3), start.plusHours(i)));
+		}
+		aggregator.getStats(tenantId, "course-1");
+		readerWriter.saveAll(events, tenantId);
+		aggregator.add(events, tenantId);
+		EventStats incremental = aggregator.getStats(tenantId, "course-1");
+
+		Assert.assertEquals(2500, aggregator.rebuild(tenantId));
+		EventStats rebuilt = aggregator.getStats(tenantId, "course-1");
+
+		Assert.assertEquals(incremental.getTotal(), rebuilt.getTotal());
+		Assert.assertEquals(incremental.getMax(), rebuilt.getMax());
+		Assert.assertEquals(incremental.getTotalByWeekNumber(), rebuilt.getTotalByWeekNumber());
+		Assert.assertEquals(incremental.getStudentActivityStats().keySet(), rebuilt.getStudentActivityStats().keySet());
+	}
+
+	@Test
+	public void incrementalCountsMatchReaderStats() {
+		List<Event> events = new ArrayList<Event>();
+		DateTime start = new DateTime(2015, 9, 1, 0, 0);
+		for (int i = 0; i < 500; i++) {
+			events.add(event("s" + (i % 5), "course-" + (i % 2), start.plusHours(i * 3)));
+		}
+		aggregator.getStats(tenantId, "course-1");
+		readerWriter.saveAll(events, tenantId);
+		aggregator.add(events, tenantId);
+
+		EventStats incremental = aggregator.getStats(tenantId, "course-1");
+		EventStats counted = readerWriter.findStatsByTenantIdAndContext(tenantId, "course-1");
+
+		Assert.assertEquals(counted.getTotal(), incremental.getTotal());
+		Assert.assertEquals(counted.getMax(), incremental.getMax());
+		Assert.assertEquals(counted.getTotalByWeekNumber(), incremental.getTotalByWeekNumber());
+		for (String studentId : counted.getStudentActivityStats().keySet()) {
+			Assert.assertEquals(counted.getStudentActivityStats().get(studentId).getTotalByWeekNumber(),
+					incremental.getStudentActivityStats().get(studentId).getTotalByWeekNumber());
+		}
+	}
+
+	@Test
+	public void firstReadRebuildsFromTheReader() {
+		DateTime monday = new DateTime(2015, 9, 14, 12, 0);
+		List<Event> stored = new ArrayList<Event>();
+		stored.add(event("s1", "course-1", monday));
+		stored.add(event("s2", "course-1", monday));
+		// stored before startup
+		readerWriter.saveAll(stored, tenantId);
+
+		// saved after startup but before the first read: left to the rebuild
+		List<Event> saved = new ArrayList<Event>();
+		saved.add(event("s1", "course-1", monday.plusDays(1)));
+		readerWriter.saveAll(saved, tenantId);
+		aggregator.add(saved, tenantId);
+
+		Assert.assertEquals(3, aggregator.getStats(tenantId, "course-1").getTotal());
+
+		List<Event> more = new ArrayList<Event>();
+		more.add(event("s3", "course-1", monday));
+		readerWriter.saveAll(more, tenantId);
+		aggregator.add(more, tenantId);
+		Assert.assertEquals(4, aggregator.getStats(tenantId, "course-1").getTotal());
+	}
+
+	private Event event(String actorId, String groupId, DateTime eventTime) {
+		Actor actor = new Actor(actorId, null, null, "name-" + actorId, null, null);
+		Group group = new Group(groupId, null, null, null, null, null, null);
+		return new Event(UUID.randomUUID().toString(), null, null, eventTime, eventTime, actor, null, null, null, group, null);
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 Unicon (R) Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apereo.openlrs.storage.wal;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Appends, reads back, reopens and truncates a log with small segments.
+ */
+public class SegmentLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recordsSurviveReopenAcrossSegments() throws Exception {
+		File dir = folder.newFolder();
+		SegmentLog log = new SegmentLog(dir, 256);
+		long end = log.append(records(0, 20));
+		log.close();
+
+		// 20 records of ~20 bytes do not fit one 256 byte segment
+		Assert.assertTrue(dir.listFiles((d, name) -> name.endsWith(".wal")).length > 1);
+
+		log = new SegmentLog(dir, 256);
+		Assert.assertEquals(end, log.getWritePosition());
+
+		List<String> read = new ArrayList<>();
+		long position = 0;
+		SegmentLog.Batch batch;
+		while (!(batch = log.read(position, 7)).getRecords().isEmpty()) {
+			for (byte[] record : batch.getRecords()) {
+				read.add(new String(record, StandardCharsets.UTF_8));
+			}
+			position = batch.getNext();
+		}
+		Assert.assertEquals(20, read.size());
+		Assert.assertEquals("record-0", read.get(0));
+		Assert.assertEquals("record-19", read.get(19));
+		Assert.assertEquals(end, position);
+
+		log.append(records(20, 1));
+		Assert.assertEquals("record-20", new String(log.read(position, 1).getRecords().get(0), StandardCharsets.UTF_8));
+		log.close();
+	}
+
+	@Test
+	public void checkpointAndTruncateDropReplayedSegments() throws Exception {
+		File dir = folder.newFolder();
+		SegmentLog log = new SegmentLog(dir, 256);
+		log.append(records(0, 20));
+		int segments = dir.listFiles((d, name) -> name.endsWith(".wal")).length;
+
+		SegmentLog.Batch batch = log.read(0, 15);
+		log.writeCheckpoint(batch.getNext());
+		log.truncateBefore(batch.getNext());
+		Assert.assertTrue(dir.listFiles((d, name) -> name.endsWith(".wal")).length < segments);
+		log.close();
+
+		log = new SegmentLog(dir, 256);
+		long checkpoint = log.readCheckpoint();
+		Assert.assertEquals(batch.getNext(), checkpoint);
+		Assert.assertEquals("record-15", new String(log.read(checkpoint, 1).getRecords().get(0), StandardCharsets.UTF_8));
+		log.close();
+	}
+
+	@Test
+	public void oversizedRecordRejectsTheWholeBatch() throws Exception {
+		SegmentLog log = new SegmentLog(folder.newFolder(), 256);
+		List<byte[]> batch = records(0, 2);
+		batch.add(new byte[256]);
+		try {
+			log.append(batch);
+			Assert.fail();
+		}
+		catch (IllegalArgumentException e) {
+			Assert.assertEquals(0, log.getWritePosition());
+			Assert.assertTrue(log.read(0, 10).getRecords().isEmpty());
+		}
+		log.close();
+	}
+
+	@Test
+	public void readerKeepsUpWithAppendsAndRolls() throws Exception {
+		final SegmentLog log = new SegmentLog(folder.newFolder(), 128);
+		final int count = 20000;
+		ExecutorService appender = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> appended = appender.submit(() -> {
+				for (int i = 0; i < count; i++) {
+					log.append(records(i, 1));
+				}
+				return null;
+			});
+
+			long position = 0;
+			int next = 0;
+			while (next < count) {
+				// sampled first, an empty read after the last append ends the walk
+				boolean done = appended.isDone();
+				SegmentLog.Batch batch = log.read(position, 3);
+				for (byte[] record : batch.getRecords()) {
+					Assert.assertEquals("record-" + next++, new String(record, StandardCharsets.UTF_8));
+				}
+				position = batch.getNext();
+				if (done && batch.getRecords().isEmpty()) {
+					break;
+				}
+			}
+			appended.get();
+			Assert.assertEquals(count, next);
+		}
+		finally {
+			appender.shutdownNow();
+			log.close();
+		}
+	}
+
+	private List<byte[]> records(int from, int count) {
+		List<byte[]> records = new ArrayList<>();
+		for (int i = from; i < from + count; i++) {
+			records.add(("record-" + i).getBytes(StandardCharsets.UTF_8));
+		}
+		return records;
+	}
+}
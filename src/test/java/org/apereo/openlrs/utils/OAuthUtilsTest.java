@@ -0,0 +1,73 @@
+package org.apereo.openlrs.utils;
+
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OAuthUtilsTest {
+
+	@Test
+	public void signMatchesUrlEncoderSignature() throws Exception {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("oauth_consumer_key", "key");
+		params.put("oauth_nonce", "a b*c~d+e/f");
+		params.put("oauth_timestamp", "1466435259");
+		params.put("oauth_signature", "ignored");
+		params.put("realm", "ignored");
+		params.put("name", "Zoë 中文 😀");
+		params.put("empty", null);
+
+		for (String secret : new String[] {"secret", "s&c r=té", null}) {
+			String expected = urlEncoderSign(secret, params, "HmacSHA1", "POST", "http://localhost/xAPI/statements?a=1");
+			Assert.assertEquals(expected, OAuthUtils.sign(secret, params, "HmacSHA1", "POST", "http://localhost/xAPI/statements?a=1"));
+			Assert.assertEquals(expected, OAuthUtils.sign(secret, new TreeMap<String, String>(params), "HmacSHA1", "POST", "http://localhost/xAPI/statements?a=1"));
+		}
+		Assert.assertEquals(7, params.size());
+	}
+
+	@Test
+	public void verifyComparesSignatures() {
+		Map<String, String> params = new TreeMap<String, String>();
+		params.put("oauth_consumer_key", "key");
+		String signature = OAuthUtils.sign("secret", params, "HmacSHA1", "GET", "http://localhost/");
+
+		Assert.assertTrue(OAuthUtils.verify(signature, "secret", params, "HmacSHA1", "GET", "http://localhost/"));
+		Assert.assertFalse(OAuthUtils.verify(signature, "other", params, "HmacSHA1", "GET", "http://localhost/"));
+		Assert.assertFalse(OAuthUtils.verify(null, "secret", params, "HmacSHA1", "GET", "http://localhost/"));
+	}
+
+	/** the URLEncoder based implementation this class used to have */
+	private static String urlEncoderSign(String secret, Map<String, String> params, String algorithm, String method, String url) throws Exception {
+		StringBuilder base = new StringBuilder(encode(method)).append("&").append(encode(url)).append("&");
+		Map<String, String> sorted = new TreeMap<String, String>(params);
+		sorted.remove("oauth_signature");
+		sorted.remove("realm");
+		boolean first = true;
+		for (Map.Entry<String, String> entry : sorted.entrySet()) {
+			if (!first) {
+				base.append(encode("&"));
+			}
+			first = false;
+			base.append(encode(entry.getKey() + "=" + entry.getValue()));
+		}
+		Mac mac = Mac.getInstance(algorithm);
+		mac.init(new SecretKeySpec((encode(secret) + "&").getBytes("UTF-8"), algorithm));
+		return new String(Base64.encodeBase64(mac.doFinal(base.toString().getBytes("UTF-8"))));
+	}
+
+	private static String encode(String s) throws Exception {
+		if (s == null) {
+			return "";
+		}
+		return URLEncoder.encode(s, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+	}
+
+}